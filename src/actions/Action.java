@@ -1,8 +1,25 @@
 package actions;
- 
+
 
 public interface Action {
     public Action execute();
     public Action undo();
     public Object getData();
+
+    /**
+     * Applies the action again after it was undone. Actions that create
+     * objects override this to bring back the same objects rather than new
+     * ones, so actions later in the history still refer to them.
+     */
+    public default Action redo() {
+        return execute();
+    }
+
+    /**
+     * Rough number of bytes this action keeps reachable while it is in the
+     * {@link ActionHistory}.
+     */
+    public default long estimatedBytes() {
+        return ActionHistory.REFERENCE_BYTES * 4;
+    }
 }
@@ -2,12 +2,24 @@ package actions;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import application.ApplicationResources;
+import data.ArtistAssigner;
+import data.AssignmentRule;
+import data.AudioMetadata;
+import data.FolderWatcher;
+import data.JournalRecord;
+import data.MetadataCache;
 import data.SongData;
+import data.SongPath;
+import data.VersionClusterer;
 import data.VersionedSongData;
 import data.PlaylistData;
 import data.ProjectArtistData;
@@ -20,89 +32,624 @@ public class ActionHandler {
     // this enabes us to also implement undo/redo functionality in the future,
     // as we can keep track of the actions performed by the user.
 
-    ArrayList<Action> actionHistory;
+    ActionHistory actionHistory;
     ApplicationResources app;
+    private final List<LibraryListener> libraryListeners = new ArrayList<>();
+    private Batch batch; // the open transaction, or null
+
+    /**
+     * What actions inside a transaction did: their journal records and
+     * library events are held back until the transaction commits.
+     */
+    private static class Batch {
+        final List<Action> actions = new ArrayList<>();
+        final List<JournalRecord> records = new ArrayList<>();
+        final List<SongEvent> events = new ArrayList<>();
+
+        void event(int kind, List<SongData> songs) {
+            SongEvent last = events.isEmpty() ? null : events.get(events.size() - 1);
+            if (last != null && last.kind == kind) {
+                last.songs.addAll(songs); // consecutive events of a kind become one
+            } else {
+                events.add(new SongEvent(kind, songs));
+            }
+        }
+    }
+
+    private static class SongEvent {
+        static final int ADDED = 0, REMOVED = 1, CHANGED = 2;
+        final int kind;
+        final List<SongData> songs;
+
+        SongEvent(int kind, List<SongData> songs) {
+            this.kind = kind;
+            this.songs = new ArrayList<>(songs);
+        }
+    }
+
+    /**
+     * The actions of one transaction, undone and redone as one. Their journal
+     * records and events are again committed once.
+     */
+    private class CompositeAction implements Action {
+        final List<Action> actions;
+
+        CompositeAction(List<Action> actions) {
+            this.actions = actions;
+        }
+
+        @Override
+        public Action execute() {
+            return redo();
+        }
+
+        @Override
+        public Action undo() {
+            batched(() -> {
+                for (int i = actions.size() - 1; i >= 0; i--)
+                    actions.get(i).undo();
+            });
+            return this;
+        }
+
+        @Override
+        public Action redo() {
+            batched(() -> {
+                for (Action action : actions)
+                    action.redo();
+            });
+            return this;
+        }
+
+        @Override
+        public Object getData() {
+            return actions;
+        }
+
+        @Override
+        public long estimatedBytes() {
+            long bytes = 0;
+            for (Action action : actions)
+                bytes += action.estimatedBytes();
+            return bytes;
+        }
+    }
 
     public ActionHandler(ApplicationResources appData) {
         this.app = appData;
-        actionHistory = new ArrayList<>();
+        actionHistory = new ActionHistory();
+    }
+
+    public void addLibraryListener(LibraryListener listener) {
+        libraryListeners.add(listener);
+    }
+
+    private void fireSongsAdded(List<SongData> songs) {
+        if (songs.isEmpty())
+            return;
+        if (batch != null) {
+            batch.event(SongEvent.ADDED, songs);
+            return;
+        }
+        for (LibraryListener l : libraryListeners)
+            l.songsAdded(songs);
+    }
+
+    private void fireSongsRemoved(List<SongData> songs) {
+        if (songs.isEmpty())
+            return;
+        if (batch != null) {
+            batch.event(SongEvent.REMOVED, songs);
+            return;
+        }
+        for (LibraryListener l : libraryListeners)
+            l.songsRemoved(songs);
     }
 
+    private void fireSongsChanged(List<SongData> songs) {
+        if (songs.isEmpty())
+            return;
+        if (batch != null) {
+            batch.event(SongEvent.CHANGED, songs);
+            return;
+        }
+        for (LibraryListener l : libraryListeners)
+            l.songsChanged(songs);
+    }
+
+    /** Journals {@code records}, or holds them back while a transaction is open. */
+    private void journal(JournalRecord... records) {
+        if (batch != null) {
+            Collections.addAll(batch.records, records);
+        } else {
+            app.fileManager.journal(records);
+        }
+    }
+
+    /**
+     * Runs {@code body} as one transaction: the actions it performs become a
+     * single undoable action, their journal records are written in one batch
+     * and listeners get one event per kind of change, all when {@code body}
+     * returns. If {@code body} throws, the actions it already performed are
+     * undone and nothing is recorded. A transaction opened inside another
+     * one joins it.
+     */
+    public void transaction(Runnable body) {
+        if (batch != null) {
+            body.run();
+            return;
+        }
+        Batch open = new Batch();
+        batch = open;
+        try {
+            body.run();
+        } catch (RuntimeException | Error e) {
+            try {
+                for (int i = open.actions.size() - 1; i >= 0; i--)
+                    open.actions.get(i).undo();
+            } finally {
+                batch = null; // the held back records and events cancel out
+            }
+            throw e;
+        }
+        batch = null;
+        commit(open);
+        if (open.actions.size() == 1)
+            actionHistory.add(open.actions.get(0));
+        else if (!open.actions.isEmpty())
+            actionHistory.add(new CompositeAction(open.actions));
+    }
+
+    /** Runs {@code body} with journal records and events held back until it returns. */
+    private void batched(Runnable body) {
+        if (batch != null) {
+            body.run();
+            return;
+        }
+        Batch open = new Batch();
+        batch = open;
+        try {
+            body.run();
+        } finally {
+            batch = null;
+            commit(open);
+        }
+    }
+
+    private void commit(Batch done) {
+        if (!done.records.isEmpty())
+            app.fileManager.journal(done.records.toArray(new JournalRecord[0]));
+        for (SongEvent event : done.events) {
+            if (event.kind == SongEvent.ADDED)
+                fireSongsAdded(event.songs);
+            else if (event.kind == SongEvent.REMOVED)
+                fireSongsRemoved(event.songs);
+            else
+                fireSongsChanged(event.songs);
+        }
+    }
+
+    /**
+     * Adds one file as an undoable action, as {@link #addSongs} does.
+     *
+     * @return the new song, or null if the file is already in the library
+     */
     public SongData addSong(File file) {
+        List<SongData> added = addSongs(List.of(file));
+        return added.isEmpty() ? null : added.get(0);
+    }
 
-        Action addSongAction = new Action() {
-            public SongData actionData = null;
+    /**
+     * Adds many files as one undoable action. Files that are already in the
+     * library are skipped; if that leaves nothing, no action is recorded.
+     * Durations are not probed here; they are read lazily when the songs are
+     * first shown.
+     *
+     * @return the songs that were added
+     */
+    @SuppressWarnings("unchecked")
+    public List<SongData> addSongs(List<File> files) {
+        List<SongData> songs = new ArrayList<>();
+        for (File file : files) {
+            SongData song = newSong(file);
+            if (app.data.getSong(song.getPath()) == null)
+                songs.add(song);
+        }
+        if (songs.isEmpty())
+            return new ArrayList<>();
+        Action action = new Action() {
+            List<SongData> added = new ArrayList<>();
+            Map<SongData, VersionedSongData> parents = new HashMap<>();
+            List<VersionedSongData> emptied = List.of();
 
             @Override
             public Action execute() {
-                SongData newSong = new SongData();
-                newSong.setFilePath(file.getAbsolutePath());
-                boolean added = app.data.putSong(newSong);
-                if (!added) {
-                    // Song already exists, do not add again
-                    return this; // Return the action itself for undo functionality, even though we didn't add a
-                                 // new song.
+                List<JournalRecord> records = new ArrayList<>();
+                VersionClusterer.Matcher versions = app.data.getVersionMatcher();
+                for (SongData song : songs) {
+                    if (!app.data.putSong(song))
+                        continue;
+                    added.add(song);
+                    records.add(JournalRecord.songAdded(song));
+                    SongData version = versions.match(song);
+                    if (version != null && version.getParent() != null) {
+                        version.getParent().addSong(song);
+                        records.add(JournalRecord.versionJoined(song, version));
+                    } else {
+                        VersionedSongData vsd = new VersionedSongData();
+                        vsd.addSong(song);
+                        app.data.addVersionedSong(vsd);
+                    }
+                    parents.put(song, song.getParent());
                 }
-                this.actionData = newSong; // Store the newSong in the action's data for undo/redo purposes.
-                String guessedTitle = "";
-                String guessedArtist = "";
-
-                long durationSeconds = data.FileManager.getSongDurationSeconds(file);
-                newSong.setDurationSeconds(durationSeconds);
-
-                // guess the title by splitting the filename by " - " and taking the first part
-                // as artist and second part as title
-                String filename = file.getName();
-                // remove the file extension
-                if (filename.contains(".")) {
-                    filename = filename.substring(0, filename.lastIndexOf('.'));
+                journal(records.toArray(new JournalRecord[0]));
+                fireSongsAdded(added);
+                return this;
+            }
+
+            @Override
+            public Action undo() {
+                List<JournalRecord> records = new ArrayList<>();
+                for (SongData song : added) {
+                    app.data.removeSong(song);
+                    records.add(JournalRecord.songRemoved(song));
                 }
-                if (filename.contains("-")) {
-                    String[] parts = filename.split("-");
-                    if (parts.length >= 2) {
-                        guessedArtist = parts[0].trim();
-                        guessedTitle = parts[1].trim();
+                emptied = app.data.removeVersions(added);
+                journal(records.toArray(new JournalRecord[0]));
+                fireSongsRemoved(added);
+                return this;
+            }
+
+            @Override
+            public Action redo() {
+                reinsert(added, parents, emptied);
+                return this;
+            }
+
+            @Override
+            public Object getData() {
+                return added;
+            }
+
+            @Override
+            public long estimatedBytes() {
+                return added.size() * (ActionHistory.SONG_BYTES + ActionHistory.REFERENCE_BYTES);
+            }
+        };
+        executeAction(action);
+        return (List<SongData>) action.getData();
+    }
+
+    /**
+     * Removes songs from the library as one undoable action. Versioned songs
+     * left without versions are removed as well.
+     */
+    public void removeSongs(List<SongData> songs) {
+        if (songs.isEmpty())
+            return;
+        Action action = new Action() {
+            List<SongData> removed = new ArrayList<>(songs.size());
+            Map<SongData, VersionedSongData> parents = new HashMap<>();
+            List<VersionedSongData> emptied = new ArrayList<>();
+
+            @Override
+            public Action execute() {
+                List<JournalRecord> records = new ArrayList<>();
+                for (SongData song : songs) {
+                    parents.put(song, song.getParent());
+                    app.data.removeSong(song);
+                    removed.add(song);
+                    records.add(JournalRecord.songRemoved(song));
+                }
+                emptied = app.data.removeVersions(removed);
+                journal(records.toArray(new JournalRecord[0]));
+                fireSongsRemoved(removed);
+                return this;
+            }
+
+            @Override
+            public Action undo() {
+                reinsert(removed, parents, emptied);
+                return this;
+            }
+
+            @Override
+            public Object getData() {
+                return removed;
+            }
+
+            @Override
+            public long estimatedBytes() {
+                return removed.size() * (ActionHistory.SONG_BYTES + ActionHistory.REFERENCE_BYTES);
+            }
+        };
+        executeAction(action);
+    }
+
+    /**
+     * Brings the library in line with what the {@link FolderWatcher} saw on
+     * disk: new files are imported, songs whose file (or folder) is gone are
+     * removed, and rewritten files get their cached metadata. All of it is
+     * one transaction.
+     */
+    public void applyFolderChanges(FolderWatcher.Changes changes) {
+        if (changes.rescanned != null) {
+            // events were lost, so deleted files are only found by a full scan
+            applyFolderScan(changes.rescanned, changes.updated);
+            return;
+        }
+        List<File> newFiles = new ArrayList<>();
+        List<SongData> rewritten = new ArrayList<>();
+        for (File file : changes.updated) {
+            SongData song = app.data.getSong(file.getAbsolutePath());
+            if (song == null) {
+                newFiles.add(file);
+            } else {
+                // the watcher already refreshed the cache entry
+                AudioMetadata metadata = MetadataCache.get().peek(song.getFilePath());
+                song.setDurationSeconds(metadata != null ? metadata.getDurationSeconds() : -1);
+                rewritten.add(song);
+            }
+        }
+
+        List<SongData> gone = new ArrayList<>();
+        List<String> goneFolders = new ArrayList<>();
+        for (String path : changes.removed) {
+            SongData song = app.data.getSong(path);
+            if (song != null)
+                gone.add(song);
+            else
+                goneFolders.add(path + File.separator);
+        }
+        if (!goneFolders.isEmpty()) {
+            for (SongData song : app.data.getSongs()) {
+                for (String folder : goneFolders) {
+                    if (song.getPath() != null && song.getPath().startsWith(folder)) {
+                        gone.add(song);
+                        break;
                     }
                 }
+            }
+        }
 
-                newSong.setTitle(guessedTitle);
-                newSong.setGuessedArtist(guessedArtist);
+        transaction(() -> {
+            if (!newFiles.isEmpty())
+                addSongs(newFiles);
+            removeSongs(gone);
+            fireSongsChanged(rewritten);
+        });
+    }
 
-                // add this to a new versionedSongData
-                // so that user can later add this to an actual versionedSongData
-                // if there is one
+    /**
+     * Brings the library in line with a full scan of the tracked
+     * {@code folders}, as one transaction: imports the scanned {@code files}
+     * that are not songs yet and removes the songs below the folders that
+     * were not scanned and no longer exist. Nothing is recorded if nothing
+     * changed.
+     */
+    public void applyFolderScan(List<String> folders, List<File> files) {
+        List<File> newFiles = new ArrayList<>();
+        Set<SongPath> found = new HashSet<>();
+        for (File file : files) {
+            SongPath path = SongPath.find(file.getAbsolutePath());
+            if (path != null && app.data.getSong(path) != null)
+                found.add(path);
+            else
+                newFiles.add(file);
+        }
+        List<String> prefixes = new ArrayList<>();
+        for (String folder : folders)
+            prefixes.add(folder.endsWith(File.separator) ? folder : folder + File.separator);
+        List<SongData> gone = new ArrayList<>();
+        for (SongData song : app.data.getSongs()) {
+            SongPath path = song.getPath();
+            if (path == null || found.contains(path))
+                continue;
+            for (String prefix : prefixes) {
+                if (path.startsWith(prefix)) {
+                    if (!new File(path.toString()).exists())
+                        gone.add(song);
+                    break;
+                }
+            }
+        }
+        if (newFiles.isEmpty() && gone.isEmpty())
+            return;
+        transaction(() -> {
+            List<SongData> added = addSongs(newFiles);
+            removeSongs(gone);
+            System.out.println("Tracked folders: " + added.size() + " songs imported, " + gone.size()
+                    + " missing songs removed.");
+        });
+    }
 
-                VersionedSongData vsd = new VersionedSongData();
-                vsd.addSong(newSong);
+    /**
+     * Joins songs that look like versions of one song (see
+     * {@link VersionClusterer}) into one versioned song each: into the one
+     * that already has the most versions. Undoable.
+     *
+     * @return the number of songs that were moved
+     */
+    public int groupVersions() {
+        Action action = new Action() {
+            Map<SongData, VersionedSongData> previousParents = new LinkedHashMap<>();
+            Map<SongData, VersionedSongData> moves = new LinkedHashMap<>();
+            List<VersionedSongData> emptied = new ArrayList<>();
 
-                
+            @Override
+            public Action execute() {
+                long start = System.currentTimeMillis();
+                for (List<SongData> cluster : VersionClusterer.cluster(app.data.getSongs())) {
+                    VersionedSongData target = null;
+                    for (SongData song : cluster) {
+                        VersionedSongData parent = song.getParent();
+                        if (parent != null && (target == null || parent.getVersions().size() > target.getVersions().size()))
+                            target = parent;
+                    }
+                    if (target == null)
+                        continue;
+                    for (SongData song : cluster) {
+                        if (song.getParent() == target)
+                            continue;
+                        previousParents.put(song, song.getParent());
+                        moves.put(song, target);
+                    }
+                }
+                apply();
+                System.out.println("Grouped " + moves.size() + " songs into versions in "
+                        + (System.currentTimeMillis() - start) + " ms.");
+                return this;
+            }
 
-                app.data.getVersionedSongs().add(vsd);
-                app.fileManager.saveGlobals();
-                return this; // Return the action itself for undo functionality.
+            @Override
+            public Action redo() {
+                // the moves made the first time, not a new clustering
+                apply();
+                return this;
+            }
+
+            private void apply() {
+                List<JournalRecord> records = new ArrayList<>();
+                for (Map.Entry<SongData, VersionedSongData> e : moves.entrySet()) {
+                    VersionedSongData target = e.getValue();
+                    SongData anchor = target.getStarred() != null ? target.getStarred() : target.getVersions().get(0);
+                    records.add(JournalRecord.versionJoined(e.getKey(), anchor));
+                }
+                emptied = app.data.moveVersions(moves);
+                journal(records.toArray(new JournalRecord[0]));
+                fireSongsChanged(new ArrayList<>(moves.keySet()));
             }
 
             @Override
             public Action undo() {
-                if(actionData == null) {
-                    return this; // Nothing to undo
+                List<JournalRecord> records = new ArrayList<>();
+                app.data.getVersionedSongs().addAll(emptied);
+                Map<SongData, VersionedSongData> back = new LinkedHashMap<>();
+                for (Map.Entry<SongData, VersionedSongData> e : previousParents.entrySet()) {
+                    VersionedSongData parent = e.getValue();
+                    if (parent == null) {
+                        // it was in no versioned song: it gets one of its own, journaled as a split,
+                        // which a redo empties and the next undo restores like any other
+                        parent = new VersionedSongData();
+                        app.data.addVersionedSong(parent);
+                        e.setValue(parent);
+                    }
+                    back.put(e.getKey(), parent);
                 }
-                app.data.removeSong(this.actionData);
-                app.data.removeVersionedSong(this.actionData.getParent());
+                app.data.moveVersions(back);
+                for (SongData song : back.keySet()) {
+                    SongData other = null;
+                    for (SongData version : song.getParent().getVersions()) {
+                        if (version != song) {
+                            other = version;
+                            break;
+                        }
+                    }
+                    records.add(other != null ? JournalRecord.versionJoined(song, other)
+                            : JournalRecord.versionSplit(song));
+                }
+                journal(records.toArray(new JournalRecord[0]));
+                fireSongsChanged(new ArrayList<>(back.keySet()));
+                return this;
+            }
+
+            @Override
+            public Object getData() {
+                return previousParents.size();
+            }
+
+            @Override
+            public long estimatedBytes() {
+                return (previousParents.size() * 2 + emptied.size()) * ActionHistory.REFERENCE_BYTES;
+            }
+        };
+        executeAction(action);
+        return (Integer) action.getData();
+    }
 
-                app.fileManager.saveGlobals();
+    /**
+     * Puts songs that were removed back into the library, each into the
+     * versioned song it was taken out of. {@code emptied} are the versioned
+     * songs that were removed along with them.
+     */
+    private void reinsert(List<SongData> songs, Map<SongData, VersionedSongData> parents,
+            List<VersionedSongData> emptied) {
+        List<JournalRecord> records = new ArrayList<>();
+        app.data.getVersionedSongs().addAll(emptied);
+        for (SongData song : songs) {
+            app.data.putSong(song);
+            records.add(JournalRecord.songAdded(song));
+            VersionedSongData parent = parents.get(song);
+            // still there if the removal failed before its versions were updated
+            if (parent != null && (parent.getVersions() == null || !parent.getVersions().contains(song))) {
+                // replaying SONG_ADD gives the song a versioned song of its own
+                if (parent.getVersions() != null && !parent.getVersions().isEmpty())
+                    records.add(JournalRecord.versionJoined(song, parent.getVersions().get(0)));
+                parent.addSong(song);
+            }
+        }
+        journal(records.toArray(new JournalRecord[0]));
+        fireSongsAdded(songs);
+    }
 
-                return this; // Return the action itself for redo functionality.
+    /**
+     * Creates the song for {@code file}, guessing artist and title from a
+     * file name of the form "Artist - Title.ext".
+     */
+    private SongData newSong(File file) {
+        SongData newSong = new SongData();
+        newSong.setFilePath(file.getAbsolutePath());
+        String guessedTitle = "";
+        String guessedArtist = "";
+
+        // guess the title by splitting the filename by " - " and taking the first part
+        // as artist and second part as title
+        String filename = file.getName();
+        // remove the file extension
+        if (filename.contains(".")) {
+            filename = filename.substring(0, filename.lastIndexOf('.'));
+        }
+        if (filename.contains("-")) {
+            String[] parts = filename.split("-");
+            if (parts.length >= 2) {
+                guessedArtist = parts[0].trim();
+                guessedTitle = parts[1].trim();
+            }
+        }
+
+        newSong.setTitle(guessedTitle);
+        newSong.setGuessedArtist(guessedArtist);
+        return newSong;
+    }
+
+    /**
+     * Adds a folder to the tracked folders (undoable). Does nothing if it is
+     * already tracked.
+     */
+    public void trackFolder(String folder) {
+        if (app.data.getTrackedFolders() != null && app.data.getTrackedFolders().contains(folder))
+            return;
+        Action action = new Action() {
+            @Override
+            public Action execute() {
+                app.data.addTrackedFolder(folder);
+                journal(JournalRecord.folderTracked(folder));
+                return this;
+            }
+
+            @Override
+            public Action undo() {
+                app.data.removeTrackedFolder(folder);
+                journal(JournalRecord.folderUntracked(folder));
+                return this;
             }
 
             @Override
             public Object getData() {
-                return this.actionData;
+                return folder;
             }
         };
-        executeAction(addSongAction);
-        return (SongData) addSongAction.getData();
-
+        executeAction(action);
     }
 
     /**
@@ -117,14 +664,21 @@ public class ActionHandler {
                 created = new PlaylistData();
                 created.setTitle(title);
                 app.data.addPlaylist(created);
-                app.fileManager.saveGlobals();
+                journal(JournalRecord.playlistAdded(created));
                 return this;
             }
 
             @Override
             public Action undo() {
                 app.data.removePlaylist(created);
-                app.fileManager.saveGlobals();
+                journal(JournalRecord.playlistRemoved(created));
+                return this;
+            }
+
+            @Override
+            public Action redo() {
+                app.data.addPlaylist(created);
+                journal(JournalRecord.playlistAdded(created));
                 return this;
             }
 
@@ -150,14 +704,21 @@ public class ActionHandler {
                 created.setName(name);
                 created.setCreated(new java.util.Date());
                 app.data.addProjectArtist(created);
-                app.fileManager.saveGlobals();
+                journal(JournalRecord.projectAdded(created));
                 return this;
             }
 
             @Override
             public Action undo() {
                 app.data.removeProjectArtist(created);
-                app.fileManager.saveGlobals();
+                journal(JournalRecord.projectRemoved(created));
+                return this;
+            }
+
+            @Override
+            public Action redo() {
+                app.data.addProjectArtist(created);
+                journal(JournalRecord.projectAdded(created));
                 return this;
             }
 
@@ -182,14 +743,14 @@ public class ActionHandler {
             @Override
             public Action execute() {
                 playlist.setTitle(newTitle);
-                app.fileManager.saveGlobals();
+                journal(JournalRecord.playlistRenamed(playlist));
                 return this;
             }
 
             @Override
             public Action undo() {
                 playlist.setTitle(oldTitle);
-                app.fileManager.saveGlobals();
+                journal(JournalRecord.playlistRenamed(playlist));
                 return this;
             }
 
@@ -201,6 +762,77 @@ public class ActionHandler {
         executeAction(action);
     }
 
+    /**
+     * Add songs to a playlist (undoable). Songs already in it are skipped.
+     */
+    public void addSongsToPlaylist(PlaylistData playlist, List<SongData> songs) {
+        if (playlist == null)
+            return;
+        List<SongData> added = new ArrayList<>();
+        for (SongData song : songs)
+            if (playlist.getSongPaths() == null || !playlist.getSongPaths().contains(song.getPath()))
+                added.add(song);
+        if (added.isEmpty())
+            return;
+        executeAction(playlistMembership(playlist, added, true));
+    }
+
+    /**
+     * Remove songs from a playlist (undoable). Songs not in it are skipped.
+     */
+    public void removeSongsFromPlaylist(PlaylistData playlist, List<SongData> songs) {
+        if (playlist == null || playlist.getSongPaths() == null)
+            return;
+        List<SongData> removed = new ArrayList<>();
+        for (SongData song : songs)
+            if (playlist.getSongPaths().contains(song.getPath()))
+                removed.add(song);
+        if (removed.isEmpty())
+            return;
+        executeAction(playlistMembership(playlist, removed, false));
+    }
+
+    private Action playlistMembership(PlaylistData playlist, List<SongData> songs, boolean add) {
+        return new Action() {
+            @Override
+            public Action execute() {
+                apply(add);
+                return this;
+            }
+
+            @Override
+            public Action undo() {
+                apply(!add);
+                return this;
+            }
+
+            private void apply(boolean adding) {
+                List<JournalRecord> records = new ArrayList<>();
+                for (SongData song : songs) {
+                    if (adding) {
+                        app.data.addSongToPlaylist(playlist, song);
+                        records.add(JournalRecord.playlistSongAdded(playlist, song));
+                    } else {
+                        app.data.removeSongFromPlaylist(playlist, song);
+                        records.add(JournalRecord.playlistSongRemoved(playlist, song));
+                    }
+                }
+                journal(records.toArray(new JournalRecord[0]));
+                fireSongsChanged(songs);
+            }
+
+            @Override
+            public Object getData() {
+                return playlist;
+            }
+
+            @Override
+            public long estimatedBytes() {
+                return songs.size() * ActionHistory.REFERENCE_BYTES;
+            }
+        };
+    }
+
     /**
      * Rename a project/artist (undoable).
      */
@@ -213,14 +845,16 @@ public class ActionHandler {
             @Override
             public Action execute() {
                 pa.setName(newName);
-                app.fileManager.saveGlobals();
+                journal(JournalRecord.projectRenamed(pa));
+                ownerRenamed(pa);
                 return this;
             }
 
             @Override
             public Action undo() {
                 pa.setName(oldName);
-                app.fileManager.saveGlobals();
+                journal(JournalRecord.projectRenamed(pa));
+                ownerRenamed(pa);
                 return this;
             }
 
@@ -244,14 +878,14 @@ public class ActionHandler {
             @Override
             public Action execute() {
                 app.data.removePlaylist(removed);
-                app.fileManager.saveGlobals();
+                journal(JournalRecord.playlistRemoved(removed));
                 return this;
             }
 
             @Override
             public Action undo() {
                 app.data.addPlaylist(removed);
-                app.fileManager.saveGlobals();
+                journal(JournalRecord.playlistAdded(removed));
                 return this;
             }
 
@@ -259,6 +893,12 @@ public class ActionHandler {
             public Object getData() {
                 return removed;
             }
+
+            @Override
+            public long estimatedBytes() {
+                int songs = removed.getSongPaths() != null ? removed.getSongPaths().size() : 0;
+                return ActionHistory.REFERENCE_BYTES * 4 + songs * ActionHistory.MEMBER_BYTES;
+            }
         };
         executeAction(action);
     }
@@ -275,14 +915,14 @@ public class ActionHandler {
             @Override
             public Action execute() {
                 app.data.removeProjectArtist(removed);
-                app.fileManager.saveGlobals();
+                journal(JournalRecord.projectRemoved(removed));
                 return this;
             }
 
             @Override
             public Action undo() {
                 app.data.addProjectArtist(removed);
-                app.fileManager.saveGlobals();
+                journal(JournalRecord.projectAdded(removed));
                 return this;
             }
 
@@ -290,92 +930,104 @@ public class ActionHandler {
             public Object getData() {
                 return removed;
             }
+
+            @Override
+            public long estimatedBytes() {
+                int songs = removed.getSongPaths() != null ? removed.getSongPaths().size() : 0;
+                return ActionHistory.REFERENCE_BYTES * 4 + songs * ActionHistory.MEMBER_BYTES;
+            }
         };
         executeAction(action);
     }
 
     /**
-     * Scan songs without owners and assign them to ProjectArtist entries based on
-     * their guessedArtist. "Unknown" (case-insensitive) or empty guessed names
-     * are ignored. This operation is undoable and returns the number of songs
-     * assigned.
+     * Assigns every song without owners to a project/artist, named by the
+     * first matching {@link AssignmentRule} or else by its guessed artist.
+     * "Unknown" (case-insensitive) or empty guessed names are ignored, and
+     * projects that do not exist yet are created. One undoable action that is
+     * journaled in one batch; returns the number of songs assigned.
      */
     public int sortSongsToArtists() {
         Action action = new Action() {
-            Map<ProjectArtistData, List<SongData>> assignments = new HashMap<>();
+            Map<ProjectArtistData, List<SongData>> assignments = new LinkedHashMap<>();
             List<ProjectArtistData> createdProjects = new ArrayList<>();
 
             @Override
             public Action execute() {
-                if (app.data == null || app.data.getSongs() == null)
+                if (app.data == null || app.data.getSongCount() == 0)
                     return this;
 
-                for (SongData s : app.data.getSongs()) {
-                    if (s == null)
-                        continue;
-                    if (s.getOwners() != null && !s.getOwners().isEmpty())
-                        continue; // already has owners
-
-                    String guessed = s.getGuessedArtist();
-                    if (guessed == null)
-                        continue;
-                    guessed = guessed.trim();
-                    if (guessed.isEmpty() || guessed.equalsIgnoreCase("unknown"))
-                        continue;
-
-                    // find existing project/artist
-                    ProjectArtistData target = null;
-                    if (app.data.getProjectsArtists() != null) {
-                        for (ProjectArtistData pa : app.data.getProjectsArtists()) {
-                            if (pa.getName() != null && pa.getName().equalsIgnoreCase(guessed)) {
-                                target = pa;
-                                break;
-                            }
-                        }
-                    }
+                long start = System.currentTimeMillis();
+                ArtistAssigner.Plan plan = ArtistAssigner.plan(app.data.getSongsView(),
+                        app.data.getProjectsArtists(), app.data.getAssignmentRules());
+                assignments.putAll(plan.existing);
+                for (Map.Entry<String, List<SongData>> e : plan.created.entrySet()) {
+                    ProjectArtistData target = new ProjectArtistData();
+                    target.setName(e.getKey());
+                    target.setCreated(new java.util.Date());
+                    createdProjects.add(target);
+                    assignments.put(target, e.getValue());
+                }
+                apply();
+                System.out.println("Sorted " + plan.getSongCount() + " songs to " + assignments.size()
+                        + " projects/artists in " + (System.currentTimeMillis() - start) + " ms.");
+                return this;
+            }
 
-                    if (target == null) {
-                        target = new ProjectArtistData();
-                        target.setName(guessed);
-                        target.setCreated(new java.util.Date());
-                        app.data.addProjectArtist(target);
-                        createdProjects.add(target);
-                    }
+            @Override
+            public Action redo() {
+                apply();
+                return this;
+            }
 
-                    // attach song to project and mark owner
-                    target.addSong(s);
-                    if (s.getOwners() == null)
-                        s.setOwners(new ArrayList<>());
-                    s.getOwners().add(target);
+            private void apply() {
+                List<JournalRecord> records = new ArrayList<>();
+                for (ProjectArtistData created : createdProjects) {
+                    app.data.addProjectArtist(created);
+                    records.add(JournalRecord.projectAdded(created));
+                }
 
-                    assignments.computeIfAbsent(target, k -> new ArrayList<>()).add(s);
+                // attach songs to projects and mark owners
+                for (Map.Entry<ProjectArtistData, List<SongData>> e : assignments.entrySet()) {
+                    app.data.assignSongsToProject(e.getKey(), e.getValue());
+                    for (SongData s : e.getValue())
+                        records.add(JournalRecord.songAssigned(e.getKey(), s));
                 }
 
-                app.fileManager.saveGlobals();
-                return this;
+                journal(records.toArray(new JournalRecord[0]));
+                fireSongsChanged(assignedSongs());
             }
 
             @Override
             public Action undo() {
+                List<JournalRecord> records = new ArrayList<>();
+
                 // remove song assignments
                 for (Map.Entry<ProjectArtistData, List<SongData>> e : assignments.entrySet()) {
                     ProjectArtistData pa = e.getKey();
-                    for (SongData s : e.getValue()) {
-                        if (s.getOwners() != null)
-                            s.getOwners().remove(pa);
-                        pa.removeSong(s);
-                    }
+                    app.data.unassignSongsFromProject(pa, e.getValue());
+                    for (SongData s : e.getValue())
+                        records.add(JournalRecord.songUnassigned(pa, s));
                 }
 
                 // remove created projects
                 for (ProjectArtistData created : createdProjects) {
                     app.data.removeProjectArtist(created);
+                    records.add(JournalRecord.projectRemoved(created));
                 }
 
-                app.fileManager.saveGlobals();
+                journal(records.toArray(new JournalRecord[0]));
+                fireSongsChanged(assignedSongs());
                 return this;
             }
 
+            private List<SongData> assignedSongs() {
+                List<SongData> songs = new ArrayList<>();
+                for (List<SongData> l : assignments.values())
+                    songs.addAll(l);
+                return songs;
+            }
+
             @Override
             public Object getData() {
                 int count = 0;
@@ -383,6 +1035,11 @@ public class ActionHandler {
                     count += l.size();
                 return count;
             }
+
+            @Override
+            public long estimatedBytes() {
+                return ((Integer) getData() + createdProjects.size()) * ActionHistory.REFERENCE_BYTES;
+            }
         };
 
         executeAction(action);
@@ -390,16 +1047,86 @@ public class ActionHandler {
         return (data instanceof Integer) ? (Integer) data : 0;
     }
 
+    /**
+     * Replaces the rules used by {@link #sortSongsToArtists()}. Undoable.
+     */
+    public void setAssignmentRules(List<AssignmentRule> rules) {
+        Action action = new Action() {
+            ArrayList<AssignmentRule> previous = app.data.getAssignmentRules();
+
+            @Override
+            public Action execute() {
+                app.data.setAssignmentRules(new ArrayList<>(rules));
+                journal(JournalRecord.rulesChanged(rules));
+                return this;
+            }
+
+            @Override
+            public Action undo() {
+                app.data.setAssignmentRules(previous);
+                journal(JournalRecord.rulesChanged(previous));
+                return this;
+            }
+
+            @Override
+            public Object getData() {
+                return rules;
+            }
+        };
+        executeAction(action);
+    }
+
+    /** The songs of {@code pa} show and are found by its name. */
+    private void ownerRenamed(ProjectArtistData pa) {
+        List<SongData> songs = new ArrayList<>(app.data.getSongsOf(pa));
+        app.data.getSearchIndex().update(songs);
+        fireSongsChanged(songs);
+    }
+
+    /**
+     * Executes {@code action} and records it for undo. Each action runs in a
+     * transaction, so if it throws, what it changed before is undone and
+     * neither its journal records nor its events get out.
+     */
     private void executeAction(Action action) {
-        action.execute();
-        actionHistory.add(action);
+        if (batch == null) {
+            transaction(() -> executeAction(action));
+            return;
+        }
+        try {
+            action.execute();
+        } catch (RuntimeException | Error e) {
+            // actions note each change as they make it, so undo reverts just those
+            try {
+                action.undo();
+            } catch (RuntimeException | Error undoFailed) {
+                e.addSuppressed(undoFailed);
+            }
+            throw e;
+        }
+        batch.actions.add(action);
+    }
+
+    public ActionHistory getActionHistory() {
+        return actionHistory;
     }
 
     public void undoLastAction() {
-        if (!actionHistory.isEmpty()) {
-            Action lastAction = actionHistory.remove(actionHistory.size() - 1);
+        if (batch != null)
+            throw new IllegalStateException("Cannot undo inside a transaction");
+        Action lastAction = actionHistory.nextUndo();
+        if (lastAction != null) {
             lastAction.undo();
         }
     }
 
+    public void redoLastAction() {
+        if (batch != null)
+            throw new IllegalStateException("Cannot redo inside a transaction");
+        Action action = actionHistory.nextRedo();
+        if (action != null) {
+            action.redo();
+        }
+    }
+
 }
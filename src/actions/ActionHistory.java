@@ -0,0 +1,129 @@
+package actions;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Undo and redo stacks of executed {@link Action}s.
+ *
+ * Actions hold on to what they touched (removed songs, deleted playlists),
+ * so the history is bounded by a number of actions and by the estimated
+ * bytes they retain ({@link Action#estimatedBytes()}). When a new action
+ * exceeds either bound, the oldest actions are dropped. Their effects are
+ * already in the journal and snapshot, so dropping one only gives up the
+ * ability to undo it.
+ */
+public class ActionHistory {
+    public static final int DEFAULT_MAX_ACTIONS = 200;
+    public static final long DEFAULT_MAX_BYTES = 32L * 1024 * 1024;
+
+    /** Rough footprint of a song retained by an action: object, strings, path. */
+    public static final long SONG_BYTES = 512;
+    /** Rough footprint of one reference held in a list or map entry. */
+    public static final long REFERENCE_BYTES = 48;
+    /** Rough footprint of one song in a playlist or project ({@code SongSet}). */
+    public static final long MEMBER_BYTES = 16;
+
+    private static class Entry {
+        final Action action;
+        final long bytes;
+
+        Entry(Action action) {
+            this.action = action;
+            this.bytes = Math.max(action.estimatedBytes(), 0);
+        }
+    }
+
+    private final Deque<Entry> undo = new ArrayDeque<>();
+    private final Deque<Entry> redo = new ArrayDeque<>();
+    private int maxActions;
+    private long maxBytes;
+    private long bytes; // of both stacks
+
+    public ActionHistory() {
+        this(DEFAULT_MAX_ACTIONS, DEFAULT_MAX_BYTES);
+    }
+
+    public ActionHistory(int maxActions, long maxBytes) {
+        setLimits(maxActions, maxBytes);
+    }
+
+    /**
+     * Sets the bounds and drops the oldest actions that exceed them. The most
+     * recent action is always kept, however large it is.
+     */
+    public void setLimits(int maxActions, long maxBytes) {
+        this.maxActions = Math.max(maxActions, 1);
+        this.maxBytes = Math.max(maxBytes, 0);
+        trim();
+    }
+
+    /** Records an executed action. Actions that were undone can no longer be redone. */
+    public void add(Action action) {
+        for (Entry entry : redo) {
+            bytes -= entry.bytes;
+        }
+        redo.clear();
+        Entry entry = new Entry(action);
+        undo.addLast(entry);
+        bytes += entry.bytes;
+        trim();
+    }
+
+    /**
+     * @return the action to undo, now on the redo stack; null if there is
+     *         none
+     */
+    public Action nextUndo() {
+        Entry entry = undo.pollLast();
+        if (entry == null) {
+            return null;
+        }
+        redo.addLast(entry);
+        return entry.action;
+    }
+
+    /**
+     * @return the action to redo, back on the undo stack; null if there is
+     *         none
+     */
+    public Action nextRedo() {
+        Entry entry = redo.pollLast();
+        if (entry == null) {
+            return null;
+        }
+        undo.addLast(entry);
+        return entry.action;
+    }
+
+    public boolean canUndo() {
+        return !undo.isEmpty();
+    }
+
+    public boolean canRedo() {
+        return !redo.isEmpty();
+    }
+
+    public int size() {
+        return undo.size() + redo.size();
+    }
+
+    /** Estimated bytes retained by the actions in the history. */
+    public long getEstimatedBytes() {
+        return bytes;
+    }
+
+    public void clear() {
+        undo.clear();
+        redo.clear();
+        bytes = 0;
+    }
+
+    private void trim() {
+        // redo entries are newer than any undo entry, so they go last
+        while (size() > 1 && (size() > maxActions || bytes > maxBytes)) {
+            Entry oldest = !undo.isEmpty() ? undo.pollFirst() : redo.pollFirst();
+            bytes -= oldest.bytes;
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package actions;
+
+import java.util.List;
+
+import data.SongData;
+
+/**
+ * Notified by the {@link ActionHandler} after actions (and their undo) added,
+ * removed or changed songs, so views can update just the affected entries.
+ * Called on the thread that performed the action, normally the EDT.
+ */
+public interface LibraryListener {
+    default void songsAdded(List<SongData> songs) {
+    }
+
+    default void songsRemoved(List<SongData> songs) {
+    }
+
+    default void songsChanged(List<SongData> songs) {
+    }
+}
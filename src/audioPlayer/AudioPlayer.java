@@ -1,34 +1,74 @@
 package audioPlayer;
 
-import java.io.File;
-import java.util.ServiceLoader;
+import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.function.Consumer;
 
 import javax.sound.sampled.AudioFormat;
-import javax.sound.sampled.AudioInputStream;
 import javax.sound.sampled.AudioSystem;
-import javax.sound.sampled.Clip;
 import javax.sound.sampled.DataLine;
 import javax.sound.sampled.FloatControl;
-import javax.sound.sampled.spi.AudioFileReader;
+import javax.sound.sampled.SourceDataLine;
+
+import data.SongData;
 
 /**
  * Audio player supporting WAV, AIFF, AU, and MP3 (with MP3SPI).
- * 
+ *
+ * Playback is streamed: a {@link StreamingTrack} decodes the file into a
+ * bounded ring buffer on its own thread and an output thread feeds that buffer
+ * into a {@link SourceDataLine}. Time-to-first-audio and memory use stay
+ * constant regardless of the file length.
+ *
+ * A "next track" slot can be filled with {@link #setNextTrack(String)}. That
+ * track is opened and pre-decoded in the background; when the current track
+ * ends the output thread continues with it on the same line, so album-order
+ * playback is gapless as long as both files share the same audio format.
+ *
+ * For A/B comparison, {@link #startCompare(List, String)} streams all versions
+ * of a song at the same playhead; {@link #switchVersion(String)} then changes
+ * the audible version within a few milliseconds without a reload.
+ *
  * Required JARs for MP3 support:
  * - mp3spi1.9.5.jar
  * - tritonus_share.jar
  * - jl1.0.1.jar
  */
 public class AudioPlayer {
+    // Decoded audio kept ahead of the output line
+    private static final int DECODE_BUFFER_MILLIS = 2000;
+    // Size of the sound card buffer; bounds pause/seek latency
+    private static final int LINE_BUFFER_MILLIS = 100;
+    private static final int OUTPUT_CHUNK_MILLIS = 20;
+    // Decoded audio buffered for the upcoming track before it starts
+    private static final int NEXT_TRACK_PREFETCH_MILLIS = 4000;
+    // Played audio kept per compared version, must exceed the line buffer
+    private static final int COMPARE_HISTORY_MILLIS = 500;
+    // Smaller chunks while comparing so a switch request is seen quickly
+    private static final int COMPARE_CHUNK_MILLIS = 5;
+
     private ExecutorService executor = Executors.newSingleThreadExecutor();
-    private Clip clip;
-    private AudioInputStream audioStream;
-    private AudioInputStream decodedStream;
-    private String currentFilePath;
+    private ExecutorService prefetchExecutor = Executors.newSingleThreadExecutor();
+    private volatile SourceDataLine line;
+    private volatile StreamingTrack track;
+    private Thread outputThread;
+    private volatile boolean outputRunning = false;
+    // Track frame that was playing when the line was at linePositionAtBase
+    private volatile long positionBaseFrame = 0;
+    private volatile long linePositionAtBase = 0;
+    private volatile String currentFilePath;
     private float currentVolume = 1.0f;
 
+    // Pre-opened upcoming track, guarded by "this"
+    private StreamingTrack nextTrack;
+    private String requestedNextPath;
+    // Counts changes of the requested next track, guarded by "this"
+    private long nextTrackRequests;
+    private volatile Consumer<String> trackChangeListener; // nullable
+
+    private volatile CompareSession compare; // null unless A/B comparing
+
     public static TransportState transportState = TransportState.STOPPED;
 
     public enum TransportState {
@@ -38,7 +78,7 @@ public class AudioPlayer {
     public void play(String filePath) {
         executor.submit(() -> {
             System.out.println("Received request to play: " + filePath);
-            if (currentFilePath != null && currentFilePath.equals(filePath) && clip != null && clip.isRunning()) {
+            if (currentFilePath != null && currentFilePath.equals(filePath) && isPlaying()) {
                 // If already playing the same file, do nothing
                 return;
             }
@@ -67,70 +107,340 @@ public class AudioPlayer {
         });
     }
 
+    /**
+     * Fills the "next track" slot. The file is opened and its first seconds
+     * are decoded in the background so the switch at the end of the current
+     * track does not have to wait for I/O. Pass null to clear the slot. The
+     * slot is kept when playback stops.
+     */
+    public void setNextTrack(String filePath) {
+        synchronized (this) {
+            if (filePath != null && filePath.equals(requestedNextPath)) {
+                return;
+            }
+            requestedNextPath = filePath;
+            nextTrackRequests++;
+            _discardNextTrack();
+        }
+        if (filePath == null || filePath.isEmpty()) {
+            return;
+        }
+        _prepareNextTrack(filePath);
+    }
+
+    private void _prepareNextTrack(String filePath) {
+        prefetchExecutor.submit(() -> {
+            synchronized (this) {
+                if (!filePath.equals(requestedNextPath)) {
+                    return; // superseded before we got to it
+                }
+            }
+            StreamingTrack prepared = new StreamingTrack(filePath, 0, NEXT_TRACK_PREFETCH_MILLIS);
+            try {
+                prepared.open();
+            } catch (Exception e) {
+                System.err.println("Error preparing next track: " + e.getMessage());
+                prepared.close();
+                return;
+            }
+            synchronized (this) {
+                if (filePath.equals(requestedNextPath) && nextTrack == null) {
+                    nextTrack = prepared;
+                    System.out.println("Prepared next track: " + filePath);
+                    return;
+                }
+            }
+            prepared.close();
+        });
+    }
+
+    public void setNextTrack(SongData song) {
+        setNextTrack(song != null ? song.getFilePath() : null);
+    }
+
+    public void clearNextTrack() {
+        setNextTrack((String) null);
+    }
+
+    /**
+     * Register a callback invoked with the new file path whenever playback
+     * moves on to the next track by itself, or stays on the compared version
+     * because a switch came too late. Called from the audio thread.
+     */
+    public void setTrackChangeListener(Consumer<String> listener) {
+        this.trackChangeListener = listener;
+    }
+
+    /**
+     * Enter A/B compare mode for the given versions of one song, starting
+     * with {@code activePath}. If one of the versions is already playing the
+     * current position is kept.
+     */
+    public void startCompare(List<String> versionPaths, String activePath) {
+        executor.submit(() -> {
+            int index = versionPaths.indexOf(activePath);
+            if (index < 0) {
+                System.err.println("Version to compare is not in the list: " + activePath);
+                return;
+            }
+            long positionMs = 0;
+            if (currentFilePath != null && versionPaths.contains(currentFilePath)) {
+                positionMs = getPositionMs();
+            }
+            _startCompare(versionPaths, index, positionMs);
+        });
+    }
+
+    /**
+     * Switch the audible version while comparing, keeping the position.
+     * Versions sharing the active audio format switch instantly; others are
+     * re-opened at the current position.
+     *
+     * @return false if not comparing, or if {@code filePath} is not one of the
+     *         compared versions or has already ended
+     */
+    public boolean switchVersion(String filePath) {
+        CompareSession session = compare;
+        if (session == null) {
+            return false;
+        }
+        int index = session.indexOf(filePath);
+        if (index < 0 || session.ended[index]) {
+            return false;
+        }
+        if (index == session.requestedIndex) {
+            return true;
+        }
+        if (session.tracks[index] != null) {
+            // picked up by the output thread before its next write
+            session.requestedIndex = index;
+        } else {
+            executor.submit(() -> {
+                if (compare == session) {
+                    _startCompare(session.paths, index, getPositionMs());
+                }
+            });
+        }
+        return true;
+    }
+
+    public boolean isComparing() {
+        return compare != null;
+    }
+
+    /** @return the version last switched to, or null if not comparing */
+    public String getComparedPath() {
+        CompareSession session = compare;
+        return session != null ? session.paths.get(session.requestedIndex) : null;
+    }
+
+    public String getCurrentFilePath() {
+        return currentFilePath;
+    }
+
     public boolean isPlaying() {
-        return clip != null && clip.isRunning();
+        return line != null && transportState == TransportState.PLAYING;
     }
 
     public boolean isPaused() {
-        return clip != null && !clip.isRunning() && currentFilePath != null;
+        return line != null && transportState == TransportState.PAUSED && currentFilePath != null;
     }
 
     public long getPositionMs() {
-        if (clip != null) {
-            return clip.getMicrosecondPosition() / 1000;
+        SourceDataLine l = line;
+        StreamingTrack t = track;
+        if (l != null && t != null) {
+            long frames = positionBaseFrame + (l.getLongFramePosition() - linePositionAtBase);
+            if (t.getFrameLength() > 0) {
+                // the hand-over to the next track lags behind by up to one line buffer
+                frames = Math.min(frames, t.getFrameLength());
+            }
+            return (long) (Math.max(0, frames) * 1000 / t.getFormat().getFrameRate());
         }
         return 0;
     }
 
     public long getDurationMs() {
-        if (clip != null) {
-            return clip.getMicrosecondLength() / 1000;
+        StreamingTrack t = track;
+        if (t != null) {
+            return t.getDurationMs();
         }
         return 0;
     }
 
     public void seek(long positionMs) {
-        executor.submit(() -> {
-            if (clip != null) {
-                clip.setMicrosecondPosition(positionMs * 1000);
-            }
-        });
-    }
-
-    private String getFileExtension(String filePath) {
-        int lastDot = filePath.lastIndexOf('.');
-        if (lastDot > 0) {
-            return filePath.substring(lastDot + 1);
-        }
-        return "";
+        executor.submit(() -> _seekAudio(positionMs));
     }
 
     private void _stopAudio() {
-        if (clip != null) {
-            clip.stop();
-            clip.close();
-            clip = null;
+        _stopOutput();
+        if (line != null) {
+            line.stop();
+            line.flush();
+            line.close();
+            line = null;
         }
         transportState = TransportState.STOPPED;
-        _closeStreams();
         currentFilePath = null;
     }
 
     private void _pauseAudio() {
-        if (clip != null && clip.isRunning()) {
-            clip.stop();
+        if (line != null && transportState == TransportState.PLAYING) {
+            line.stop();
             transportState = TransportState.PAUSED;
         }
     }
 
     private void _resumeAudio() {
-        if (clip != null && !clip.isRunning()) {
-            clip.start();
+        if (line != null && transportState == TransportState.PAUSED) {
+            line.start();
             transportState = TransportState.PLAYING;
             System.out.println("Resuming audio: " + currentFilePath);
         }
     }
 
+    /**
+     * Seeks by re-opening the stream at the target frame. Only the decoder
+     * position changes; the output line stays open so there is no device
+     * re-initialisation.
+     */
+    private void _seekAudio(long positionMs) {
+        CompareSession session = compare;
+        if (session != null) {
+            _startCompare(session.paths, session.activeIndex, positionMs);
+            return;
+        }
+        StreamingTrack current = track;
+        if (current == null || line == null) {
+            return;
+        }
+        AudioFormat format = current.getFormat();
+        long frame = (long) (Math.max(0, positionMs) / 1000.0 * format.getFrameRate());
+        if (current.getFrameLength() > 0) {
+            frame = Math.min(frame, current.getFrameLength());
+        }
+
+        _stopOutput();
+        line.flush();
+        try {
+            StreamingTrack seeked = new StreamingTrack(current.getFilePath(), frame, DECODE_BUFFER_MILLIS);
+            seeked.open();
+            _startOutput(seeked, frame);
+        } catch (Exception e) {
+            System.err.println("Error seeking audio: " + e.getMessage());
+            e.printStackTrace();
+            _stopAudio();
+        }
+    }
+
+    /**
+     * Opens every version at {@code positionMs} and starts the compare output
+     * thread. Re-uses the line when the format allows it.
+     */
+    private void _startCompare(List<String> paths, int activeIndex, long positionMs) {
+        boolean paused = transportState == TransportState.PAUSED;
+        _stopOutput();
+        synchronized (this) {
+            requestedNextPath = null;
+            nextTrackRequests++;
+            _discardNextTrack();
+        }
+
+        StreamingTrack[] tracks = new StreamingTrack[paths.size()];
+        try {
+            StreamingTrack active = StreamingTrack.atTime(paths.get(activeIndex), positionMs,
+                    DECODE_BUFFER_MILLIS, COMPARE_HISTORY_MILLIS);
+            active.open();
+            tracks[activeIndex] = active;
+            AudioFormat format = active.getFormat();
+
+            for (int i = 0; i < tracks.length; i++) {
+                if (i == activeIndex) {
+                    continue;
+                }
+                StreamingTrack version = StreamingTrack.atTime(paths.get(i), positionMs,
+                        DECODE_BUFFER_MILLIS, COMPARE_HISTORY_MILLIS);
+                try {
+                    version.open();
+                } catch (Exception e) {
+                    System.err.println("Cannot open version for comparison: " + paths.get(i));
+                    continue;
+                }
+                if (version.getFormat().matches(format)
+                        && version.getStartFrame() == active.getStartFrame()) {
+                    tracks[i] = version;
+                } else {
+                    System.out.println("Version has a different format, switching will reload: " + paths.get(i));
+                    version.close();
+                }
+            }
+
+            if (line != null && !line.getFormat().matches(format)) {
+                line.stop();
+                line.close();
+                line = null;
+            }
+            if (line == null) {
+                line = openLine(format);
+                _applyVolume();
+            } else {
+                line.flush();
+            }
+        } catch (Exception e) {
+            System.err.println("Error starting comparison: " + e.getMessage());
+            e.printStackTrace();
+            for (StreamingTrack t : tracks) {
+                if (t != null) {
+                    t.close();
+                }
+            }
+            _stopAudio();
+            return;
+        }
+
+        CompareSession session = new CompareSession(paths, tracks, activeIndex);
+        SourceDataLine l = line;
+        compare = session;
+        track = session.active();
+        currentFilePath = track.getFilePath();
+        positionBaseFrame = track.getStartFrame();
+        linePositionAtBase = l.getLongFramePosition();
+        long lineBase = linePositionAtBase;
+        outputRunning = true;
+        outputThread = new Thread(() -> compareOutputLoop(session, l, lineBase), "AudioCompareOutput");
+        outputThread.setDaemon(true);
+        outputThread.start();
+
+        if (paused) {
+            transportState = TransportState.PAUSED;
+        } else {
+            line.start();
+            transportState = TransportState.PLAYING;
+        }
+        System.out.println("Comparing " + paths.size() + " versions, playing: " + currentFilePath);
+    }
+
+    private synchronized void _discardNextTrack() {
+        if (nextTrack != null) {
+            nextTrack.close();
+            nextTrack = null;
+        }
+    }
+
+    /**
+     * Takes the prepared next track out of the slot if it can be played on a
+     * line opened with {@code format}.
+     */
+    private synchronized StreamingTrack _takeNextTrack(AudioFormat format) {
+        if (nextTrack != null && nextTrack.getFormat().matches(format)) {
+            StreamingTrack next = nextTrack;
+            nextTrack = null;
+            requestedNextPath = null;
+            return next;
+        }
+        return null;
+    }
+
     private void _applyVolume() {
         _setVolumeImmediate(currentVolume);
     }
@@ -140,9 +450,10 @@ public class AudioPlayer {
      * Used internally for fade effects.
      */
     private void _setVolumeImmediate(float volume) {
-        if (clip != null) {
+        SourceDataLine l = line;
+        if (l != null) {
             try {
-                FloatControl gainControl = (FloatControl) clip.getControl(FloatControl.Type.MASTER_GAIN);
+                FloatControl gainControl = (FloatControl) l.getControl(FloatControl.Type.MASTER_GAIN);
                 // Convert linear volume (0.0 - 1.0) to decibels
                 float dB;
                 if (volume <= 0.0f) {
@@ -161,7 +472,7 @@ public class AudioPlayer {
 
     /**
      * Performs a quick fade-in to prevent audio clicks at playback start.
-     * 
+     *
      * @param durationMs Duration of the fade-in in milliseconds
      */
     private void _fadeIn(int durationMs) {
@@ -182,74 +493,321 @@ public class AudioPlayer {
         _setVolumeImmediate(currentVolume);
     }
 
-    private void _closeStreams() {
-        if (decodedStream != null) {
+    /**
+     * Starts the output thread that moves decoded audio from {@code t} into
+     * the line. {@code startFrame} is the track frame the line will play next.
+     */
+    private void _startOutput(StreamingTrack t, long startFrame) {
+        SourceDataLine l = line;
+        track = t;
+        positionBaseFrame = startFrame;
+        linePositionAtBase = l.getLongFramePosition();
+        outputRunning = true;
+        long lineBase = linePositionAtBase;
+        outputThread = new Thread(() -> outputLoop(t, l, lineBase), "AudioOutput");
+        outputThread.setDaemon(true);
+        outputThread.start();
+    }
+
+    /**
+     * Stops the output thread and closes the current track. The line itself
+     * stays open.
+     */
+    private void _stopOutput() {
+        outputRunning = false;
+        StreamingTrack t = track;
+        if (t != null) {
+            t.close();
+        }
+        CompareSession session = compare;
+        if (session != null) {
+            session.close();
+            compare = null;
+        }
+        if (line != null) {
+            // unblocks a write()/drain() waiting on a paused line
+            line.flush();
+        }
+        if (outputThread != null) {
             try {
-                decodedStream.close();
-            } catch (Exception e) {
-                e.printStackTrace();
+                outputThread.join(500);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             }
-            decodedStream = null;
+            outputThread = null;
         }
-        if (audioStream != null) {
-            try {
-                audioStream.close();
-            } catch (Exception e) {
-                e.printStackTrace();
+        if (line != null) {
+            line.flush();
+        }
+        track = null;
+    }
+
+    private void outputLoop(StreamingTrack first, SourceDataLine l, long lineBase) {
+        StreamingTrack t = first;
+        AudioFormat format = t.getFormat();
+        int frameSize = format.getFrameSize();
+        int chunkBytes = (int) (format.getFrameRate() * OUTPUT_CHUNK_MILLIS / 1000) * frameSize;
+        byte[] chunk = new byte[Math.max(frameSize, chunkBytes)];
+        long framesWritten = 0;
+        // next track already written to the line but not yet audible
+        StreamingTrack pending = null;
+        long pendingLineFrame = 0;
+        long pendingRequest = 0;
+        try {
+            while (outputRunning) {
+                int n = t.read(chunk, chunk.length);
+                if (n < 0) {
+                    if (!outputRunning) {
+                        // closed by a seek, stop or switch, not at its end
+                        break;
+                    }
+                    StreamingTrack next;
+                    long request;
+                    synchronized (this) {
+                        request = nextTrackRequests;
+                        next = _takeNextTrack(format);
+                    }
+                    if (next == null) {
+                        break;
+                    }
+                    // Gapless hand-over: keep writing into the same line so the
+                    // first frame of the next track directly follows the last one.
+                    if (pending != null) {
+                        _promoteTrack(pending, pendingLineFrame);
+                    }
+                    pending = next;
+                    pendingLineFrame = lineBase + framesWritten;
+                    pendingRequest = request;
+                    t = next;
+                    continue;
+                }
+                // blocks while the line buffer is full or the line is paused
+                l.write(chunk, 0, n);
+                framesWritten += n / frameSize;
+                if (pending != null && l.getLongFramePosition() >= pendingLineFrame) {
+                    _promoteTrack(pending, pendingLineFrame);
+                    pending = null;
+                }
+            }
+            if (outputRunning) {
+                l.drain();
+                if (pending != null) {
+                    _promoteTrack(pending, pendingLineFrame);
+                    pending = null;
+                }
+                StreamingTrack finished = t;
+                executor.submit(() -> _onTrackFinished(finished));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            System.err.println("Error during playback: " + e.getMessage());
+            e.printStackTrace();
+        } finally {
+            if (pending != null) {
+                // stopped or seeked before the next track became audible: it
+                // is still the next one, but part of it was read, so it goes
+                // back into the slot freshly prepared
+                pending.close();
+                _giveBackNextTrack(pending.getFilePath(), pendingRequest);
             }
-            audioStream = null;
         }
     }
 
+    /**
+     * Prepares {@code filePath} as the next track again, unless the next
+     * track was changed after it was taken as request {@code takenAt}. This
+     * may run after the output thread outlived a stop, so it only depends on
+     * the slot, not on what is playing.
+     */
+    private void _giveBackNextTrack(String filePath, long takenAt) {
+        synchronized (this) {
+            if (nextTrackRequests != takenAt) {
+                return;
+            }
+            requestedNextPath = filePath;
+            nextTrackRequests++;
+        }
+        _prepareNextTrack(filePath);
+    }
+
+    /**
+     * Output loop while A/B comparing: plays the active version and skips the
+     * same number of bytes on all others so they stay at the playhead.
+     *
+     * On a switch the unplayed part of the line buffer is dropped and every
+     * version is rewound by that amount, so the new version continues exactly
+     * where the old one was audible.
+     */
+    private void compareOutputLoop(CompareSession session, SourceDataLine l, long lineBase) {
+        StreamingTrack active = session.active();
+        AudioFormat format = active.getFormat();
+        int frameSize = format.getFrameSize();
+        int chunkBytes = (int) (format.getFrameRate() * COMPARE_CHUNK_MILLIS / 1000) * frameSize;
+        byte[] chunk = new byte[Math.max(frameSize, chunkBytes)];
+        long framesWritten = 0;
+        long trackFrame = active.getStartFrame();
+        try {
+            while (outputRunning) {
+                int requested = session.requestedIndex;
+                if (requested != session.activeIndex && session.tracks[requested] == null) {
+                    // the version ended after the switch was requested
+                    session.requestedIndex = session.activeIndex;
+                    Consumer<String> listener = trackChangeListener;
+                    if (listener != null) {
+                        listener.accept(active.getFilePath());
+                    }
+                } else if (requested != session.activeIndex) {
+                    long unplayed = Math.max(0, lineBase + framesWritten - l.getLongFramePosition());
+                    l.flush();
+                    long rewound = unplayed;
+                    for (StreamingTrack t : session.tracks) {
+                        if (t != null) {
+                            rewound = Math.min(rewound, t.rewind((int) (unplayed * frameSize)) / frameSize);
+                        }
+                    }
+                    trackFrame -= rewound;
+
+                    session.activeIndex = requested;
+                    active = session.active();
+                    lineBase = l.getLongFramePosition();
+                    framesWritten = 0;
+                    track = active;
+                    positionBaseFrame = trackFrame;
+                    linePositionAtBase = lineBase;
+                    currentFilePath = active.getFilePath();
+                }
+
+                int n = active.read(chunk, chunk.length);
+                if (n < 0) {
+                    break;
+                }
+                for (int i = 0; i < session.tracks.length; i++) {
+                    StreamingTrack other = session.tracks[i];
+                    if (other != null && other != active && other.skip(n) < n) {
+                        // this version is shorter and has ended
+                        session.ended[i] = true;
+                        other.close();
+                        session.tracks[i] = null;
+                    }
+                }
+                trackFrame += n / frameSize;
+                l.write(chunk, 0, n);
+                framesWritten += n / frameSize;
+            }
+            if (outputRunning) {
+                l.drain();
+                StreamingTrack finished = active;
+                executor.submit(() -> _onTrackFinished(finished));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            System.err.println("Error during comparison playback: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Makes {@code next} the current track once the line has reached the
+     * frame where it starts.
+     */
+    private void _promoteTrack(StreamingTrack next, long lineFrame) {
+        if (!outputRunning) {
+            return;
+        }
+        StreamingTrack previous = track;
+        track = next;
+        positionBaseFrame = 0;
+        linePositionAtBase = lineFrame;
+        currentFilePath = next.getFilePath();
+        if (previous != null) {
+            previous.close();
+        }
+        System.out.println("Playing next track: " + next.getFilePath());
+        Consumer<String> listener = trackChangeListener;
+        if (listener != null) {
+            listener.accept(next.getFilePath());
+        }
+    }
+
+    private void _onTrackFinished(StreamingTrack finished) {
+        if (track != finished) {
+            return;
+        }
+        System.out.println("Finished playing: " + finished.getFilePath());
+        StreamingTrack next;
+        String nextPath;
+        synchronized (this) {
+            // Either the prepared track has a different format and needs a
+            // new line, or it is still being prepared and is opened directly
+            next = nextTrack;
+            nextPath = next != null ? next.getFilePath() : requestedNextPath;
+            nextTrack = null;
+            requestedNextPath = null;
+            nextTrackRequests++;
+        }
+        _stopAudio();
+        if (next != null) {
+            _playTrack(next);
+        } else if (nextPath != null && !nextPath.isEmpty()) {
+            _playAudio(nextPath);
+        } else {
+            return;
+        }
+        Consumer<String> listener = trackChangeListener;
+        if (listener != null && nextPath.equals(currentFilePath)) {
+            listener.accept(nextPath);
+        }
+    }
+
+    private SourceDataLine openLine(AudioFormat format) throws Exception {
+        DataLine.Info info = new DataLine.Info(SourceDataLine.class, format);
+        SourceDataLine l = (SourceDataLine) AudioSystem.getLine(info);
+        int frameSize = Math.max(1, format.getFrameSize());
+        int bufferBytes = (int) (format.getFrameRate() * LINE_BUFFER_MILLIS / 1000) * frameSize;
+        l.open(format, Math.max(frameSize, bufferBytes));
+        return l;
+    }
+
     public void _playAudio(String filePath) {
         if (filePath == null || filePath.isEmpty()) {
             System.err.println("Invalid file path: " + filePath);
             return;
         }
-        if (clip != null && clip.isRunning()) {
+        if (line != null) {
             System.out.println("Stopping currently playing audio before starting new one.");
             _stopAudio();
         }
+        StreamingTrack newTrack = new StreamingTrack(filePath, 0, DECODE_BUFFER_MILLIS);
         try {
-            File audioFile = new File(filePath);
-            System.out.println("Attempting to play: " + audioFile.getAbsolutePath());
-
-            String ext = getFileExtension(filePath).toLowerCase();
-            System.out.println("File extension: " + ext);
-
-            // For MP3 files, use AudioSystem which will use MP3SPI
-            if (ext.equals("mp3")) {
-                audioStream = AudioSystem.getAudioInputStream(audioFile);
-                AudioFormat baseFormat = audioStream.getFormat();
-
-                // Decode MP3 to PCM
-                AudioFormat decodedFormat = new AudioFormat(
-                        AudioFormat.Encoding.PCM_SIGNED,
-                        baseFormat.getSampleRate(),
-                        16,
-                        baseFormat.getChannels(),
-                        baseFormat.getChannels() * 2,
-                        baseFormat.getSampleRate(),
-                        false);
-
-                decodedStream = AudioSystem.getAudioInputStream(decodedFormat, audioStream);
-                System.out.println("Decoded MP3 to PCM");
-            } else {
-                // For WAV, AIFF, AU - explicitly skip MP3SPI reader to avoid misdetection
-                System.out.println("Playing native format for: " + ext);
-                audioStream = getAudioInputStreamSkippingMp3Spi(audioFile);
-                decodedStream = audioStream;
-                System.out.println("Playing native format: " + audioStream.getFormat().getEncoding());
-            }
+            System.out.println("Attempting to play: " + filePath);
+            newTrack.open();
+        } catch (Exception e) {
+            System.err.println("Error playing audio: " + e.getMessage());
+            e.printStackTrace();
+            newTrack.close();
+            _stopAudio();
+            return;
+        }
+        _playTrack(newTrack);
+    }
 
-            DataLine.Info info = new DataLine.Info(Clip.class, decodedStream.getFormat());
-            clip = (Clip) AudioSystem.getLine(info);
-            clip.open(decodedStream);
+    /**
+     * Plays an opened track from its start on a new line.
+     */
+    private void _playTrack(StreamingTrack newTrack) {
+        String filePath = newTrack.getFilePath();
+        try {
+            System.out.println("Streaming format: " + newTrack.getFormat());
+
+            line = openLine(newTrack.getFormat());
             currentFilePath = filePath;
 
             // Start with silence and fade in to prevent click
             _setVolumeImmediate(0.0f);
-            clip.start();
+            _startOutput(newTrack, 0);
+            line.start();
             transportState = TransportState.PLAYING;
             _fadeIn(20); // 20ms fade-in to eliminate click
             System.out.println("Playing audio: " + filePath);
@@ -257,33 +815,8 @@ public class AudioPlayer {
         } catch (Exception e) {
             System.err.println("Error playing audio: " + e.getMessage());
             e.printStackTrace();
-            _closeStreams();
-        }
-    }
-
-    /**
-     * Gets an AudioInputStream while skipping the MP3SPI reader.
-     * This prevents MP3SPI from incorrectly detecting WAV/AIFF files as MPEG.
-     */
-    private AudioInputStream getAudioInputStreamSkippingMp3Spi(File file) throws Exception {
-        ServiceLoader<AudioFileReader> readers = ServiceLoader.load(AudioFileReader.class);
-
-        for (AudioFileReader reader : readers) {
-            String readerName = reader.getClass().getName().toLowerCase();
-            // Skip any MP3-related readers
-            if (readerName.contains("mp3") || readerName.contains("mpeg")) {
-                continue;
-            }
-            try {
-                AudioInputStream stream = reader.getAudioInputStream(file);
-                System.out.println("Using reader: " + reader.getClass().getName());
-                return stream;
-            } catch (Exception e) {
-                // This reader can't handle the file, try next
-            }
+            newTrack.close();
+            _stopAudio();
         }
-
-        throw new javax.sound.sampled.UnsupportedAudioFileException(
-                "No suitable audio reader found for: " + file.getName());
     }
 }
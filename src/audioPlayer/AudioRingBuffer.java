@@ -0,0 +1,152 @@
+package audioPlayer;
+
+/**
+ * Bounded byte ring buffer used to hand decoded PCM from a decoder thread to
+ * the output line. Writers block while the buffer is full, readers block while
+ * it is empty, so memory use is fixed by the capacity and not by track length.
+ *
+ * Optionally a number of already-read bytes is kept behind the read position
+ * so a reader can {@link #rewind(int)} a little, e.g. to restart from the
+ * audible playhead after dropping the output line's buffer.
+ */
+public class AudioRingBuffer {
+    private final byte[] buffer;
+    private final int capacity; // maximum number of unread bytes
+    private final int history; // read bytes kept for rewind()
+    private int retained = 0;
+    private int readPos = 0;
+    private int writePos = 0;
+    private int available = 0;
+    private boolean endOfStream = false;
+    private boolean closed = false;
+
+    public AudioRingBuffer(int capacity) {
+        this(capacity, 0);
+    }
+
+    public AudioRingBuffer(int capacity, int history) {
+        if (capacity <= 0 || history < 0) {
+            throw new IllegalArgumentException("Invalid ring buffer size: " + capacity + "/" + history);
+        }
+        this.capacity = capacity;
+        this.history = history;
+        buffer = new byte[capacity + history];
+    }
+
+    /**
+     * Writes all {@code len} bytes, blocking while the buffer is full. Returns
+     * early without writing the rest if the buffer is closed meanwhile.
+     */
+    public synchronized void write(byte[] src, int off, int len) throws InterruptedException {
+        while (len > 0) {
+            while (available >= capacity && !closed) {
+                wait();
+            }
+            if (closed) {
+                return;
+            }
+            int chunk = Math.min(len, capacity - available);
+            chunk = Math.min(chunk, buffer.length - writePos);
+            System.arraycopy(src, off, buffer, writePos, chunk);
+            writePos = (writePos + chunk) % buffer.length;
+            available += chunk;
+            // new data may overwrite the oldest retained bytes
+            retained = Math.min(retained, buffer.length - available);
+            off += chunk;
+            len -= chunk;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Reads up to {@code len} bytes, blocking until at least one byte is
+     * available.
+     *
+     * @return number of bytes read, or -1 once the stream has ended and the
+     *         buffer is drained (or the buffer was closed)
+     */
+    public synchronized int read(byte[] dst, int off, int len) throws InterruptedException {
+        while (available == 0 && !endOfStream && !closed) {
+            wait();
+        }
+        if (closed || available == 0) {
+            return -1;
+        }
+        int n = Math.min(len, available);
+        int first = Math.min(n, buffer.length - readPos);
+        System.arraycopy(buffer, readPos, dst, off, first);
+        if (n > first) {
+            System.arraycopy(buffer, 0, dst, off + first, n - first);
+        }
+        readPos = (readPos + n) % buffer.length;
+        available -= n;
+        retained = Math.min(retained + n, history);
+        notifyAll();
+        return n;
+    }
+
+    /**
+     * Discards up to {@code len} bytes, blocking until at least one byte is
+     * available. Skipped bytes are retained for {@link #rewind(int)} like read
+     * ones.
+     *
+     * @return number of bytes skipped, or -1 at the end of the stream
+     */
+    public synchronized int skip(int len) throws InterruptedException {
+        while (available == 0 && !endOfStream && !closed) {
+            wait();
+        }
+        if (closed || available == 0) {
+            return -1;
+        }
+        int n = Math.min(len, available);
+        readPos = (readPos + n) % buffer.length;
+        available -= n;
+        retained = Math.min(retained + n, history);
+        notifyAll();
+        return n;
+    }
+
+    /**
+     * Moves the read position back by up to {@code len} already-read bytes.
+     *
+     * @return number of bytes actually rewound
+     */
+    public synchronized int rewind(int len) {
+        int n = Math.min(len, retained);
+        readPos = (readPos - n + buffer.length) % buffer.length;
+        available += n;
+        retained -= n;
+        notifyAll();
+        return n;
+    }
+
+    /**
+     * Marks the end of the stream; readers get -1 once the remaining bytes
+     * are consumed.
+     */
+    public synchronized void finish() {
+        endOfStream = true;
+        notifyAll();
+    }
+
+    /**
+     * Closes the buffer, waking up any blocked reader or writer.
+     */
+    public synchronized void close() {
+        closed = true;
+        notifyAll();
+    }
+
+    public synchronized int available() {
+        return available;
+    }
+
+    public synchronized boolean isEndOfStream() {
+        return endOfStream;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+}
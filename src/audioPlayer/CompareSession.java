@@ -0,0 +1,47 @@
+package audioPlayer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The versions of one song streamed in lock-step for A/B comparison.
+ *
+ * Every version is decoded at the same playhead; the output thread plays the
+ * active one and skips the same amount of audio on the others, so switching
+ * is just a change of {@link #requestedIndex}. Versions whose audio format
+ * differs from the active one cannot share the output line and are left
+ * unopened ({@code null}); switching to those re-opens the session.
+ * Versions shorter than the playhead are closed and marked {@link #ended};
+ * switching to those is refused.
+ */
+class CompareSession {
+    final List<String> paths;
+    final StreamingTrack[] tracks;
+    final boolean[] ended;
+    volatile int activeIndex;
+    volatile int requestedIndex;
+
+    CompareSession(List<String> paths, StreamingTrack[] tracks, int activeIndex) {
+        this.paths = new ArrayList<>(paths);
+        this.tracks = tracks;
+        this.ended = new boolean[tracks.length];
+        this.activeIndex = activeIndex;
+        this.requestedIndex = activeIndex;
+    }
+
+    int indexOf(String path) {
+        return paths.indexOf(path);
+    }
+
+    StreamingTrack active() {
+        return tracks[activeIndex];
+    }
+
+    void close() {
+        for (StreamingTrack t : tracks) {
+            if (t != null) {
+                t.close();
+            }
+        }
+    }
+}
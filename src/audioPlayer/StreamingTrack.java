@@ -0,0 +1,353 @@
+package audioPlayer;
+
+import java.io.File;
+import java.util.Map;
+import java.util.ServiceLoader;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.DataLine;
+import javax.sound.sampled.SourceDataLine;
+import javax.sound.sampled.spi.AudioFileReader;
+
+/**
+ * A single audio file opened for streaming playback.
+ *
+ * A decoder thread reads (and for MP3, decodes) the file into a bounded
+ * {@link AudioRingBuffer}, so only a few seconds of PCM are ever held in
+ * memory regardless of the track length.
+ */
+public class StreamingTrack {
+    private static final int DECODE_CHUNK_BYTES = 16 * 1024;
+
+    private final String filePath;
+    private long startFrame;
+    private long startMillis = -1;
+    private final int bufferMillis;
+    private final int historyMillis;
+
+    private AudioInputStream audioStream;
+    private AudioInputStream decodedStream;
+    private AudioFormat format;
+    private long frameLength = AudioSystem.NOT_SPECIFIED;
+    private AudioRingBuffer ringBuffer;
+    private Thread decoderThread;
+    private volatile boolean closed = false;
+
+    /**
+     * @param filePath     file to stream
+     * @param startFrame   frame to start decoding from (used for seeking)
+     * @param bufferMillis how much decoded audio the ring buffer holds ahead of
+     *                     the output line
+     */
+    public StreamingTrack(String filePath, long startFrame, int bufferMillis) {
+        this(filePath, startFrame, bufferMillis, 0);
+    }
+
+    /**
+     * @param historyMillis how much already-played audio is kept for
+     *                      {@link #rewind(int)}
+     */
+    public StreamingTrack(String filePath, long startFrame, int bufferMillis, int historyMillis) {
+        this.filePath = filePath;
+        this.startFrame = Math.max(0, startFrame);
+        this.bufferMillis = bufferMillis;
+        this.historyMillis = historyMillis;
+    }
+
+    /**
+     * Creates a track that starts at a time instead of a frame, for when the
+     * file's frame rate is not known yet.
+     */
+    public static StreamingTrack atTime(String filePath, long startMillis, int bufferMillis, int historyMillis) {
+        StreamingTrack track = new StreamingTrack(filePath, 0, bufferMillis, historyMillis);
+        track.startMillis = Math.max(0, startMillis);
+        return track;
+    }
+
+    /**
+     * Opens the file, skips to the start frame and starts the decoder thread.
+     */
+    public void open() throws Exception {
+        File audioFile = new File(filePath);
+        String ext = getFileExtension(filePath).toLowerCase();
+
+        try {
+            if (ext.equals("mp3")) {
+                audioStream = AudioSystem.getAudioInputStream(audioFile);
+                AudioFormat baseFormat = audioStream.getFormat();
+
+                // Decode MP3 to PCM
+                AudioFormat decodedFormat = new AudioFormat(
+                        AudioFormat.Encoding.PCM_SIGNED,
+                        baseFormat.getSampleRate(),
+                        16,
+                        baseFormat.getChannels(),
+                        baseFormat.getChannels() * 2,
+                        baseFormat.getSampleRate(),
+                        false);
+
+                decodedStream = AudioSystem.getAudioInputStream(decodedFormat, audioStream);
+                frameLength = getMp3FrameLength(audioFile, decodedFormat);
+            } else {
+                // For WAV, AIFF, AU - explicitly skip MP3SPI reader to avoid misdetection
+                audioStream = getAudioInputStreamSkippingMp3Spi(audioFile);
+                decodedStream = toLineCompatibleStream(audioStream);
+                frameLength = audioStream.getFrameLength();
+            }
+            format = decodedStream.getFormat();
+
+            int frameSize = Math.max(1, format.getFrameSize());
+            int bytesPerSecond = (int) (format.getFrameRate() * frameSize);
+            int capacity = Math.max(frameSize, bytesPerSecond / 1000 * bufferMillis);
+            int history = bytesPerSecond / 1000 * historyMillis;
+            ringBuffer = new AudioRingBuffer(capacity - capacity % frameSize, history - history % frameSize);
+
+            if (startMillis >= 0) {
+                startFrame = (long) (startMillis / 1000.0 * format.getFrameRate());
+            }
+            if (frameLength > 0) {
+                startFrame = Math.min(startFrame, frameLength);
+            }
+            skipFrames(startFrame);
+        } catch (Exception e) {
+            closeStreams();
+            throw e;
+        }
+
+        decoderThread = new Thread(this::decodeLoop, "AudioDecoder-" + audioFile.getName());
+        decoderThread.setDaemon(true);
+        decoderThread.start();
+    }
+
+    /**
+     * Reads decoded audio into {@code buf}. Blocks until at least one whole
+     * frame is available; the returned byte count is always frame-aligned.
+     *
+     * @param len maximum number of bytes, must be a multiple of the frame size
+     * @return bytes read, or -1 once the track has been fully played
+     */
+    public int read(byte[] buf, int len) throws InterruptedException {
+        int frameSize = format.getFrameSize();
+        int total = 0;
+        while (total < len) {
+            int n = ringBuffer.read(buf, total, len - total);
+            if (n < 0) {
+                break;
+            }
+            total += n;
+            if (total % frameSize == 0) {
+                break;
+            }
+        }
+        total -= total % frameSize;
+        return total == 0 ? -1 : total;
+    }
+
+    /**
+     * Discards decoded audio, keeping this track in step with another one that
+     * is being read. Blocks until {@code len} bytes were skipped.
+     *
+     * @return bytes skipped; less than {@code len} only at the end of the track
+     */
+    public int skip(int len) throws InterruptedException {
+        int total = 0;
+        while (total < len) {
+            int n = ringBuffer.skip(len - total);
+            if (n < 0) {
+                break;
+            }
+            total += n;
+        }
+        return total;
+    }
+
+    /**
+     * Steps back over up to {@code len} bytes that were already read or
+     * skipped, as far as the history allows.
+     *
+     * @return bytes rewound (frame-aligned)
+     */
+    public int rewind(int len) {
+        return ringBuffer.rewind(len - len % format.getFrameSize());
+    }
+
+    /**
+     * Stops the decoder thread and releases the file. Safe to call from any
+     * thread and more than once.
+     */
+    public void close() {
+        closed = true;
+        if (ringBuffer != null) {
+            ringBuffer.close();
+        }
+        if (decoderThread == null) {
+            closeStreams();
+        } else {
+            // The decoder thread closes the streams itself once it wakes up.
+            decoderThread.interrupt();
+        }
+    }
+
+    public String getFilePath() {
+        return filePath;
+    }
+
+    public AudioFormat getFormat() {
+        return format;
+    }
+
+    public long getStartFrame() {
+        return startFrame;
+    }
+
+    /**
+     * @return total frames in the track, or {@link AudioSystem#NOT_SPECIFIED}
+     */
+    public long getFrameLength() {
+        return frameLength;
+    }
+
+    public long getDurationMs() {
+        if (format == null || frameLength <= 0 || format.getFrameRate() <= 0) {
+            return 0;
+        }
+        return (long) (frameLength * 1000 / format.getFrameRate());
+    }
+
+    private void decodeLoop() {
+        int frameSize = Math.max(1, format.getFrameSize());
+        byte[] chunk = new byte[DECODE_CHUNK_BYTES - DECODE_CHUNK_BYTES % frameSize];
+        try {
+            int n;
+            while (!closed && (n = decodedStream.read(chunk, 0, chunk.length)) != -1) {
+                if (n > 0) {
+                    ringBuffer.write(chunk, 0, n);
+                }
+            }
+        } catch (InterruptedException e) {
+            // closed while waiting for buffer space
+        } catch (Exception e) {
+            if (!closed) {
+                System.err.println("Error decoding audio: " + e.getMessage());
+                e.printStackTrace();
+            }
+        } finally {
+            ringBuffer.finish();
+            closeStreams();
+        }
+    }
+
+    private void skipFrames(long frames) throws Exception {
+        long remaining = frames * format.getFrameSize();
+        byte[] discard = null;
+        while (remaining > 0) {
+            long skipped = decodedStream.skip(remaining);
+            if (skipped <= 0) {
+                // Some decoders cannot skip; read and discard instead
+                if (discard == null) {
+                    discard = new byte[DECODE_CHUNK_BYTES];
+                }
+                int n = decodedStream.read(discard, 0, (int) Math.min(discard.length, remaining));
+                if (n < 0) {
+                    break;
+                }
+                skipped = n;
+            }
+            remaining -= skipped;
+        }
+    }
+
+    /**
+     * Converts formats the sound card cannot play directly (e.g. 24-bit WAV on
+     * some systems) to 16-bit signed PCM.
+     */
+    private AudioInputStream toLineCompatibleStream(AudioInputStream stream) {
+        AudioFormat source = stream.getFormat();
+        if (AudioSystem.isLineSupported(new DataLine.Info(SourceDataLine.class, source))) {
+            return stream;
+        }
+        AudioFormat target = new AudioFormat(
+                AudioFormat.Encoding.PCM_SIGNED,
+                source.getSampleRate(),
+                16,
+                source.getChannels(),
+                source.getChannels() * 2,
+                source.getSampleRate(),
+                false);
+        if (!source.matches(target) && AudioSystem.isConversionSupported(target, source)) {
+            System.out.println("Converting " + source + " to " + target);
+            return AudioSystem.getAudioInputStream(target, stream);
+        }
+        return stream;
+    }
+
+    private long getMp3FrameLength(File file, AudioFormat decodedFormat) {
+        try {
+            AudioFileFormat fileFormat = AudioSystem.getAudioFileFormat(file);
+            Map<String, Object> properties = fileFormat.properties();
+            if (properties != null && properties.get("duration") instanceof Long) {
+                long microseconds = (Long) properties.get("duration");
+                return (long) (microseconds / 1_000_000.0 * decodedFormat.getFrameRate());
+            }
+        } catch (Exception e) {
+            System.err.println("Could not determine MP3 length: " + e.getMessage());
+        }
+        return AudioSystem.NOT_SPECIFIED;
+    }
+
+    private void closeStreams() {
+        if (decodedStream != null && decodedStream != audioStream) {
+            try {
+                decodedStream.close();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+        decodedStream = null;
+        if (audioStream != null) {
+            try {
+                audioStream.close();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+            audioStream = null;
+        }
+    }
+
+    private static String getFileExtension(String filePath) {
+        int lastDot = filePath.lastIndexOf('.');
+        if (lastDot > 0) {
+            return filePath.substring(lastDot + 1);
+        }
+        return "";
+    }
+
+    /**
+     * Gets an AudioInputStream while skipping the MP3SPI reader.
+     * This prevents MP3SPI from incorrectly detecting WAV/AIFF files as MPEG.
+     */
+    private static AudioInputStream getAudioInputStreamSkippingMp3Spi(File file) throws Exception {
+        ServiceLoader<AudioFileReader> readers = ServiceLoader.load(AudioFileReader.class);
+
+        for (AudioFileReader reader : readers) {
+            String readerName = reader.getClass().getName().toLowerCase();
+            // Skip any MP3-related readers
+            if (readerName.contains("mp3") || readerName.contains("mpeg")) {
+                continue;
+            }
+            try {
+                AudioInputStream stream = reader.getAudioInputStream(file);
+                System.out.println("Using reader: " + reader.getClass().getName());
+                return stream;
+            } catch (Exception e) {
+                // This reader can't handle the file, try next
+            }
+        }
+
+        throw new javax.sound.sampled.UnsupportedAudioFileException(
+                "No suitable audio reader found for: " + file.getName());
+    }
+}
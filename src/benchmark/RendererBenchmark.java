@@ -0,0 +1,76 @@
+package benchmark;
+
+import java.awt.Component;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.swing.CellRendererPane;
+import javax.swing.JList;
+import javax.swing.ListCellRenderer;
+
+import data.GlobalData;
+import data.SongData;
+import gui.retro.LCDListCellRenderer;
+
+/**
+ * Measures painting of the song list rows while scrolling: every frame
+ * paints the rows of a 400x480 viewport, one row further down than the
+ * frame before, the way the list UI does.
+ *
+ * Usage: {@code java -Djava.awt.headless=true benchmark.RendererBenchmark [frames]}
+ * (default 20000).
+ */
+public class RendererBenchmark {
+    private static final int WIDTH = 400;
+    private static final int ROW_HEIGHT = 32;
+    private static final int VISIBLE_ROWS = 15;
+    private static final int RUNS = 5;
+
+    public static void main(String[] args) {
+        int frames = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        GlobalData library = StartupBenchmark.generate(10_000);
+        List<SongData> songs = new ArrayList<>(library.getSongs());
+
+        JList<SongData> list = new JList<>();
+        // file paths are long enough to be cut off with an ellipsis
+        ListCellRenderer<Object> renderer = new LCDListCellRenderer(o -> ((SongData) o).getFilePath(),
+                o -> "03:25");
+        CellRendererPane pane = new CellRendererPane();
+        BufferedImage image = new BufferedImage(WIDTH, ROW_HEIGHT * VISIBLE_ROWS, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+
+        long[] nanosPerFrame = new long[RUNS];
+        long allocated = 0;
+        for (int run = 0; run < RUNS; run++) {
+            System.gc();
+            long bytesBefore = allocatedBytes();
+            long start = System.nanoTime();
+            for (int frame = 0; frame < frames; frame++) {
+                for (int row = 0; row < VISIBLE_ROWS; row++) {
+                    int index = (frame + row) % songs.size();
+                    Component c = renderer.getListCellRendererComponent(list, songs.get(index), index,
+                            index % 50 == 0, false);
+                    pane.paintComponent(g, c, list, 0, row * ROW_HEIGHT, WIDTH, ROW_HEIGHT, true);
+                }
+            }
+            nanosPerFrame[run] = (System.nanoTime() - start) / frames;
+            allocated = allocatedBytes() - bytesBefore;
+        }
+        g.dispose();
+        Arrays.sort(nanosPerFrame);
+        System.out.println(String.format("%d frames of %d rows: median %d us/frame, best %d us/frame, %d bytes/frame allocated",
+                frames, VISIBLE_ROWS, nanosPerFrame[RUNS / 2] / 1000, nanosPerFrame[0] / 1000, allocated / frames));
+    }
+
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,42 @@
+package benchmark;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+import data.GlobalData;
+import data.SearchIndex;
+
+/**
+ * Measures search-as-you-type on a generated library: every prefix of a few
+ * queries is searched as if typed key by key.
+ *
+ * Usage: {@code java benchmark.SearchBenchmark [songs]} (default 100000).
+ */
+public class SearchBenchmark {
+    private static final String[] QUERIES = { "track 1234", "artist 42 v2", "bounces", "music track 7" };
+    private static final int RUNS = 20;
+
+    public static void main(String[] args) {
+        int songCount = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        GlobalData library = StartupBenchmark.generate(songCount);
+        SearchIndex index = library.getSearchIndex();
+        index.search("warm up"); // builds the index
+
+        for (String query : QUERIES) {
+            long[] micros = new long[query.length() * RUNS];
+            int n = 0;
+            int hits = 0;
+            for (int run = 0; run < RUNS; run++) {
+                for (int end = 1; end <= query.length(); end++) {
+                    long start = System.nanoTime();
+                    BitSet result = index.search(query.substring(0, end));
+                    micros[n++] = (System.nanoTime() - start) / 1000;
+                    hits = result != null ? result.cardinality() : songCount;
+                }
+            }
+            Arrays.sort(micros);
+            System.out.println(String.format("%-14s %6d hits, median %5d us, 99th %5d us, max %5d us",
+                    "\"" + query + "\"", hits, micros[n / 2], micros[n * 99 / 100], micros[n - 1]));
+        }
+    }
+}
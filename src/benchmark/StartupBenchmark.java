@@ -0,0 +1,118 @@
+package benchmark;
+
+import java.io.File;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+import com.google.gson.Gson;
+
+import data.FileManager;
+import data.GlobalData;
+import data.LibrarySnapshot;
+import data.PlaylistData;
+import data.ProjectArtistData;
+import data.SongData;
+import data.VersionedSongData;
+
+/**
+ * Measures how long loading the library takes at startup, for the binary
+ * snapshot and for the JSON form, on a generated library.
+ *
+ * Usage: {@code java benchmark.StartupBenchmark [songs]} (default 100000).
+ */
+public class StartupBenchmark {
+    private static final int RUNS = 7;
+
+    public static void main(String[] args) throws Exception {
+        int songCount = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        GlobalData library = generate(songCount);
+
+        byte[] binary = LibrarySnapshot.write(library).bytes;
+        Gson gson = FileManager.createGson();
+        String json = gson.toJson(library);
+        System.out.println("Library: " + songCount + " songs, " + library.getProjectsArtists().size()
+                + " projects, " + library.getPlaylists().size() + " playlists");
+        System.out.println("Size: binary " + binary.length / 1024 + " KB, JSON " + json.length() / 1024 + " KB");
+
+        report("binary", () -> LibrarySnapshot.read(binary));
+        report("JSON", () -> FileManager.readGlobalData(gson, new StringReader(json)));
+    }
+
+    private interface Load {
+        GlobalData run() throws Exception;
+    }
+
+    private static void report(String name, Load load) throws Exception {
+        long[] millis = new long[RUNS];
+        long allocated = 0;
+        for (int i = 0; i < RUNS; i++) {
+            System.gc();
+            long bytesBefore = allocatedBytes();
+            long start = System.nanoTime();
+            GlobalData data = load.run();
+            millis[i] = (System.nanoTime() - start) / 1_000_000;
+            allocated = allocatedBytes() - bytesBefore;
+            if (data.getSongCount() == 0) {
+                throw new IllegalStateException(name + " load returned an empty library");
+            }
+        }
+        Arrays.sort(millis);
+        System.out.println(String.format("%-7s load: median %d ms, best %d ms, %d MB allocated", name,
+                millis[RUNS / 2], millis[0], allocated / (1024 * 1024)));
+    }
+
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+
+    /**
+     * Builds a library shaped like a producer's: songs spread over a few
+     * hundred artist folders, each owned by its artist, a share of them in
+     * playlists and some with several versions.
+     */
+    static GlobalData generate(int songCount) {
+        GlobalData data = new GlobalData();
+        int artistCount = Math.max(1, songCount / 200);
+        ProjectArtistData[] artists = new ProjectArtistData[artistCount];
+        for (int a = 0; a < artistCount; a++) {
+            artists[a] = new ProjectArtistData();
+            artists[a].setName("Artist " + a);
+            artists[a].setCreated(new java.util.Date());
+            data.addProjectArtist(artists[a]);
+        }
+        PlaylistData[] playlists = new PlaylistData[Math.max(1, songCount / 1000)];
+        for (int p = 0; p < playlists.length; p++) {
+            playlists[p] = new PlaylistData();
+            playlists[p].setTitle("Playlist " + p);
+            data.addPlaylist(playlists[p]);
+        }
+
+        VersionedSongData vsd = null;
+        for (int i = 0; i < songCount; i++) {
+            ProjectArtistData artist = artists[i % artistCount];
+            SongData song = new SongData();
+            String title = "Track " + (i / 3);
+            song.setTitle(title);
+            song.setGuessedArtist(artist.getName());
+            song.setFilePath(File.separator + "Music" + File.separator + "Bounces" + File.separator
+                    + artist.getName() + File.separator + artist.getName() + " - " + title + " v" + (i % 3)
+                    + ".wav");
+            data.putSong(song);
+            data.assignSongToProject(artist, song);
+            if (i % 3 == 0) {
+                vsd = new VersionedSongData();
+                data.addVersionedSong(vsd);
+            }
+            vsd.addSong(song);
+            if (i % 10 == 0) {
+                data.addSongToPlaylist(playlists[i % playlists.length], song);
+            }
+        }
+        return data;
+    }
+}
@@ -0,0 +1,115 @@
+package data;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Works out which project/artist each song without owners belongs to, for
+ * "Sort songs to artists". The first {@link AssignmentRule} that applies
+ * names the project, otherwise the guessed artist does.
+ *
+ * Names are resolved in parallel on the common fork/join pool and matched
+ * case-insensitively through a hash index of the existing projects, so the
+ * cost is linear in the number of songs. Planning does not change the
+ * library; the caller applies the {@link Plan} on the EDT.
+ */
+public class ArtistAssigner {
+    private static final String UNKNOWN = "unknown";
+
+    private ArtistAssigner() {
+    }
+
+    /** Songs grouped by the project/artist they go to. */
+    public static class Plan {
+        /** Existing projects and the songs to assign to each. */
+        public final Map<ProjectArtistData, List<SongData>> existing = new LinkedHashMap<>();
+        /** Names of projects to create, each with its songs. */
+        public final Map<String, List<SongData>> created = new LinkedHashMap<>();
+
+        public int getSongCount() {
+            int count = 0;
+            for (List<SongData> songs : existing.values()) {
+                count += songs.size();
+            }
+            for (List<SongData> songs : created.values()) {
+                count += songs.size();
+            }
+            return count;
+        }
+    }
+
+    public static Plan plan(Collection<SongData> songs, Collection<ProjectArtistData> projects,
+            List<AssignmentRule> rules) {
+        List<AssignmentRule> ruleList = rules != null ? rules : List.of();
+        Map<String, ProjectArtistData> byName = new HashMap<>();
+        if (projects != null) {
+            for (ProjectArtistData pa : projects) {
+                if (pa.getName() != null) {
+                    byName.putIfAbsent(fold(pa.getName()), pa); // the first one wins, as before
+                }
+            }
+        }
+
+        List<SongData> unowned = new ArrayList<>();
+        for (SongData song : songs) {
+            if (song != null && (song.getOwners() == null || song.getOwners().isEmpty())) {
+                unowned.add(song);
+            }
+        }
+        // resolving names (rules, regular expressions) is the expensive part
+        String[] names = new String[unowned.size()];
+        IntStream.range(0, names.length).parallel().forEach(i -> names[i] = resolve(unowned.get(i), ruleList));
+
+        Plan plan = new Plan();
+        Map<String, List<SongData>> toCreate = new HashMap<>();
+        for (int i = 0; i < names.length; i++) {
+            if (names[i] == null) {
+                continue;
+            }
+            String key = fold(names[i]);
+            ProjectArtistData target = byName.get(key);
+            if (target != null) {
+                plan.existing.computeIfAbsent(target, k -> new ArrayList<>()).add(unowned.get(i));
+            } else {
+                List<SongData> group = toCreate.get(key);
+                if (group == null) {
+                    // named as spelled for its first song
+                    group = new ArrayList<>();
+                    toCreate.put(key, group);
+                    plan.created.put(names[i], group);
+                }
+                group.add(unowned.get(i));
+            }
+        }
+        return plan;
+    }
+
+    /**
+     * @return the project/artist name for {@code song}, or null if neither a
+     *         rule nor the guessed artist gives one
+     */
+    static String resolve(SongData song, List<AssignmentRule> rules) {
+        for (AssignmentRule rule : rules) {
+            String name = rule.resolve(song);
+            if (name != null && !name.isBlank()) {
+                return name.trim();
+            }
+        }
+        String guessed = song.getGuessedArtist();
+        if (guessed == null) {
+            return null;
+        }
+        guessed = guessed.trim();
+        return guessed.isEmpty() || guessed.equalsIgnoreCase(UNKNOWN) ? null : guessed;
+    }
+
+    private static String fold(String name) {
+        return name.trim().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,143 @@
+package data;
+
+import java.io.File;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * A rule of "Sort songs to artists" that names the project/artist a song
+ * belongs to. Rules are tried in order before the guessed artist:
+ * <ul>
+ * <li>{@link Kind#FOLDER}: songs below the folder {@code match} go to
+ * {@code project}.</li>
+ * <li>{@link Kind#PATTERN}: songs whose path contains the regular expression
+ * {@code match} go to {@code project}, where {@code $1}, {@code $2}, ... are
+ * replaced by the groups of the match, e.g. {@code /bounces/([^/]+)/} to
+ * {@code $1}.</li>
+ * </ul>
+ */
+public class AssignmentRule {
+
+    public enum Kind {
+        FOLDER,
+        PATTERN
+    }
+
+    Kind kind;
+    String match; // folder or regular expression
+    String project; // project/artist name, may refer to groups of a pattern
+    private transient Pattern pattern;
+
+    public static AssignmentRule folder(String folder, String project) {
+        AssignmentRule rule = new AssignmentRule();
+        rule.kind = Kind.FOLDER;
+        rule.match = folder;
+        rule.project = project;
+        return rule;
+    }
+
+    /**
+     * @throws PatternSyntaxException if {@code regex} is not a valid regular
+     *                                expression
+     */
+    public static AssignmentRule pattern(String regex, String project) {
+        AssignmentRule rule = new AssignmentRule();
+        rule.kind = Kind.PATTERN;
+        rule.match = regex;
+        rule.project = project;
+        rule.compile();
+        return rule;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public String getMatch() {
+        return match;
+    }
+
+    public String getProject() {
+        return project;
+    }
+
+    /**
+     * The name of the project/artist this rule assigns {@code song} to, or
+     * null if it does not apply. Safe to call from several threads.
+     */
+    public String resolve(SongData song) {
+        if (song.getPath() == null || match == null || project == null) {
+            return null;
+        }
+        if (kind == Kind.FOLDER) {
+            String folder = match.endsWith("/") || match.endsWith(File.separator) ? match : match + File.separator;
+            return song.getPath().startsWith(folder) ? project : null;
+        }
+        Pattern compiled = compile();
+        if (compiled == null) {
+            return null;
+        }
+        Matcher m = compiled.matcher(song.getFilePath());
+        return m.find() ? expand(project, m) : null;
+    }
+
+    private Pattern compile() {
+        Pattern compiled = pattern;
+        if (compiled == null && kind == Kind.PATTERN && match != null) {
+            compiled = Pattern.compile(match);
+            pattern = compiled; // racy but idempotent
+        }
+        return compiled;
+    }
+
+    /** Replaces {@code $n} in {@code template} by group n of {@code m}. */
+    private static String expand(String template, Matcher m) {
+        if (template.indexOf('$') < 0) {
+            return template;
+        }
+        StringBuilder name = new StringBuilder();
+        for (int i = 0; i < template.length(); i++) {
+            char c = template.charAt(i);
+            if (c == '$' && i + 1 < template.length() && Character.isDigit(template.charAt(i + 1))
+                    && template.charAt(i + 1) - '0' <= m.groupCount()) {
+                String group = m.group(template.charAt(++i) - '0');
+                name.append(group != null ? group : "");
+            } else {
+                name.append(c);
+            }
+        }
+        return name.toString().trim();
+    }
+
+    /** The rule as one line of the rules editor. */
+    @Override
+    public String toString() {
+        return (kind == Kind.FOLDER ? "folder " : "regex ") + match + " => " + project;
+    }
+
+    /**
+     * Reads a rule written by {@link #toString()}: {@code folder <path> =>
+     * <name>} or {@code regex <pattern> => <name>}.
+     *
+     * @throws IllegalArgumentException if the line is not a valid rule
+     */
+    public static AssignmentRule parse(String line) {
+        String s = line.trim();
+        int arrow = s.lastIndexOf("=>");
+        if (arrow < 0) {
+            throw new IllegalArgumentException("Missing \"=>\" in rule: " + s);
+        }
+        String left = s.substring(0, arrow).trim();
+        String name = s.substring(arrow + 2).trim();
+        if (name.isEmpty()) {
+            throw new IllegalArgumentException("Missing project/artist name in rule: " + s);
+        }
+        if (left.startsWith("folder ")) {
+            return folder(left.substring(7).trim(), name);
+        } else if (left.startsWith("regex ")) {
+            return pattern(left.substring(6).trim(), name);
+        }
+        throw new IllegalArgumentException("A rule starts with \"folder\" or \"regex\": " + s);
+    }
+}
@@ -0,0 +1,92 @@
+package data;
+
+import java.io.File;
+import java.util.Map;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+
+/**
+ * What is known about an audio file without decoding it, together with the
+ * size and modification time of the file it was read from.
+ */
+public class AudioMetadata {
+    long size;
+    long lastModified;
+    int durationSeconds;
+    String type; // file type, e.g. WAVE or MP3
+    String encoding;
+    float sampleRate;
+    int channels;
+    int bits;
+
+    public int getDurationSeconds() {
+        return durationSeconds;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public String getEncoding() {
+        return encoding;
+    }
+
+    public float getSampleRate() {
+        return sampleRate;
+    }
+
+    public int getChannels() {
+        return channels;
+    }
+
+    public int getBits() {
+        return bits;
+    }
+
+    /**
+     * @return true if {@code file} still has the size and modification time
+     *         this entry was read from
+     */
+    boolean matches(File file) {
+        return file.length() == size && file.lastModified() == lastModified;
+    }
+
+    /**
+     * Reads the header of {@code file}. Never returns null; fields that could
+     * not be determined stay 0.
+     */
+    static AudioMetadata read(File file) {
+        AudioMetadata m = new AudioMetadata();
+        m.size = file.length();
+        m.lastModified = file.lastModified();
+        try {
+            AudioFileFormat fileFormat = AudioSystem.getAudioFileFormat(file);
+            AudioFormat format = fileFormat.getFormat();
+            m.type = fileFormat.getType() != null ? fileFormat.getType().toString() : null;
+            m.encoding = format.getEncoding() != null ? format.getEncoding().toString() : null;
+            m.sampleRate = format.getSampleRate();
+            m.channels = format.getChannels();
+            m.bits = format.getSampleSizeInBits();
+
+            // For MP3 files (via MP3SPI), duration is available in properties as
+            // microseconds
+            Map<String, Object> properties = fileFormat.properties();
+            if (properties != null && properties.get("duration") instanceof Long) {
+                m.durationSeconds = (int) ((Long) properties.get("duration") / 1_000_000);
+                return m;
+            }
+
+            // Fallback for standard audio formats (WAV, AIFF, etc.)
+            long frames = fileFormat.getFrameLength();
+            float frameRate = format.getFrameRate();
+            if (frames > 0 && frameRate > 0) {
+                m.durationSeconds = (int) (frames / frameRate);
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return m;
+    }
+}
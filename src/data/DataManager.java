@@ -1,8 +1,8 @@
 package data;
 
 import java.nio.channels.FileLock;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
 
 public class DataManager {
     /*
@@ -21,9 +21,7 @@ public class DataManager {
     }
 
     public List<SongData> getSongsByArtist(ProjectArtistData artist) {
-        return fileManager.getGlobalData().getSongs().stream()
-                .filter(song -> song.getOwners().contains(artist))
-                .collect(Collectors.toList());
+        return new ArrayList<>(fileManager.getGlobalData().getSongsOf(artist));
         // Return a list of songs owned by the given artist
     }
 }
@@ -1,37 +1,177 @@
 package data;
 
+import java.awt.EventQueue;
 import java.awt.FileDialog;
 import java.awt.Frame;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
 
+import javax.swing.JFileChooser;
+
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 
 import application.ApplicationResources;
 
 public class FileManager {
+    // Journal records after which the journal is folded into a new snapshot
+    private static final int COMPACT_AFTER_RECORDS = 500;
+    // Save requests within this window are written together
+    private static final long SAVE_COALESCE_MS = 300;
+    // Leave subtitles, notes and change histories on disk until a song is inspected
+    private static final boolean LAZY_SONG_DETAILS = true;
+
     String applicationPath = "";
     ApplicationResources app;
     Gson gson;
+    MutationJournal journal;
+    SaveScheduler saveScheduler = new SaveScheduler();
+    FolderScanner folderScanner;
+    FolderWatcher folderWatcher;
+    // records not yet appended, the count of all records journaled and the
+    // library copy waiting to be written, with that count when it was taken
+    private final List<JournalRecord> pendingRecords = new ArrayList<>();
+    private long journaled;
+    private LibrarySnapshot.Copy snapshotCopy;
+    private long copiedUpTo;
+    // persistence thread: records appended in this session since the last snapshot
+    private final List<JournalRecord> journalTail = new ArrayList<>();
 
     public FileManager(ApplicationResources appData) {
         this.app = appData;
-        this.gson = new GsonBuilder().setPrettyPrinting().create();
+        this.gson = createGson();
         try {
             applicationPath = new File(new File(".").getCanonicalPath()).getPath() + "/data/";
         } catch (IOException e) {
             e.printStackTrace();
         }
+        journal = new MutationJournal(new File(applicationPath + File.separator + "globalData.journal"));
+        MetadataCache.init(new File(applicationPath + File.separator + "metadataCache.json"), saveScheduler);
+        folderScanner = new FolderScanner(new File(applicationPath + File.separator + "folderScan.json"),
+                saveScheduler);
+        folderWatcher = new FolderWatcher(folderScanner);
+    }
+
+    /**
+     * @return the Gson setup used for the JSON form of the library
+     */
+    public static Gson createGson() {
+        return new GsonBuilder().setPrettyPrinting()
+                .registerTypeAdapterFactory(new ReferenceTypeAdapterFactory())
+                .registerTypeAdapter(SongPath.class, new TypeAdapter<SongPath>() {
+                    // paths stay plain strings in JSON, also as map keys
+                    @Override
+                    public void write(JsonWriter out, SongPath path) throws IOException {
+                        out.value(path != null ? path.toString() : null);
+                    }
+
+                    @Override
+                    public SongPath read(JsonReader in) throws IOException {
+                        if (in.peek() == JsonToken.NULL) {
+                            in.nextNull();
+                            return null;
+                        }
+                        return SongPath.of(in.nextString());
+                    }
+                })
+                .registerTypeAdapter(SongSet.class, new TypeAdapter<SongSet>() {
+                    // membership stays a list of path strings in JSON
+                    @Override
+                    public void write(JsonWriter out, SongSet songs) throws IOException {
+                        if (songs == null) {
+                            out.nullValue();
+                            return;
+                        }
+                        out.beginArray();
+                        for (SongPath path : songs) {
+                            out.value(path.toString());
+                        }
+                        out.endArray();
+                    }
+
+                    @Override
+                    public SongSet read(JsonReader in) throws IOException {
+                        if (in.peek() == JsonToken.NULL) {
+                            in.nextNull();
+                            return null;
+                        }
+                        SongSet songs = new SongSet();
+                        in.beginArray();
+                        while (in.hasNext()) {
+                            songs.add(SongPath.of(in.nextString()));
+                        }
+                        in.endArray();
+                        return songs;
+                    }
+                }).create();
+    }
+
+    /**
+     * Reads a library from its JSON form and restores the links between its
+     * entities.
+     */
+    public static GlobalData readGlobalData(Gson gson, Reader reader) {
+        GlobalData data = gson.fromJson(reader, GlobalData.class);
+        if (data != null) {
+            data.afterLoad();
+        }
+        return data;
+    }
+
+    public FolderScanner getFolderScanner() {
+        return folderScanner;
+    }
+
+    public FolderWatcher getFolderWatcher() {
+        return folderWatcher;
     }
 
     public enum FileFilter {
         SONGFILE, AUDIOFILE, PLAYLISTFILE, PROJECTFILE, ARTISTFILE, IMAGEFILE, NONE
     }
 
+    /**
+     * @return the lower case file extensions (without dot) matched by
+     *         {@code filter}; empty for {@link FileFilter#NONE}
+     */
+    public static Set<String> getExtensions(FileFilter filter) {
+        return switch (filter) {
+            case AUDIOFILE -> Set.of("mp3", "wav", "flac", "aiff", "aac", "ogg");
+            case SONGFILE -> Set.of("ast");
+            case PLAYLISTFILE -> Set.of("aspl");
+            case PROJECTFILE -> Set.of("asproj");
+            case ARTISTFILE -> Set.of("asart");
+            case IMAGEFILE -> Set.of("png", "jpg", "jpeg", "gif");
+            default -> Set.of();
+        };
+    }
+
+    /**
+     * @return true if the extension of {@code fileName} is one of
+     *         {@code filter}'s
+     */
+    public static boolean accepts(FileFilter filter, String fileName) {
+        int dot = fileName.lastIndexOf('.');
+        if (dot < 0) {
+            return false;
+        }
+        return getExtensions(filter).contains(fileName.substring(dot + 1).toLowerCase());
+    }
+
     public GlobalData getGlobalData() {
         if (app.data == null) {
             loadGlobalData();
@@ -40,26 +180,231 @@ public class FileManager {
     }
 
     private void loadGlobalData() {
-        // Load global data from a file, e.g. using Gson
-        try {
-            String path = applicationPath + File.separator + "globalData.json";
-            File file = new File(path);
+        long start = System.nanoTime();
+        File snapshot = new File(applicationPath + File.separator + "library.bin");
+        File json = new File(applicationPath + File.separator + "globalData.json");
+        boolean migrate = false;
+        long checksum = 0;
+        if (snapshot.exists()) {
+            try {
+                byte[] bytes = Files.readAllBytes(snapshot.toPath());
+                app.data = LibrarySnapshot.read(bytes, LAZY_SONG_DETAILS ? snapshot : null);
+                checksum = LibrarySnapshot.checksum(bytes);
+            } catch (Exception e) {
+                System.err.println("Could not read library snapshot: " + e.getMessage());
+                // keep it for recovery rather than overwrite it with the fallback
+                File aside = new File(snapshot.getPath() + "." + System.currentTimeMillis() + ".unreadable");
+                if (snapshot.renameTo(aside)) {
+                    System.err.println("The unreadable snapshot was moved to " + aside);
+                }
+            }
+        }
+        if (app.data == null && json.exists()) {
+            // libraries saved before the binary snapshot, or a manual import
+            app.data = importGlobalData(json);
+            migrate = app.data != null;
+        }
+        if (app.data == null) {
+            app.data = new GlobalData(); // Create new if loading fails
+        }
 
-            app.data = gson.fromJson(new FileReader(file), GlobalData.class);
+        // Bring the snapshot up to date with everything journaled since
+        int replayed = journal.replay(app.data, checksum);
+        if (replayed > 0) {
+            System.out.println("Replayed " + replayed + " journal records.");
+        }
+        if (replayed > 0 || migrate) {
+            saveGlobals();
+        }
+        System.out.println("Loaded library (" + app.data.getSongCount() + " songs) in "
+                + (System.nanoTime() - start) / 1_000_000 + " ms.");
+    }
+
+    /**
+     * Reads a library from JSON, as written by {@link #exportGlobalData}.
+     *
+     * @return the library, or null if the file could not be read
+     */
+    public GlobalData importGlobalData(File file) {
+        try (FileReader reader = new FileReader(file, StandardCharsets.UTF_8)) {
+            return readGlobalData(gson, reader);
         } catch (Exception e) {
             e.printStackTrace();
-            app.data = new GlobalData(); // Create new if loading fails
+            return null;
         }
+    }
+
+    /**
+     * Writes the library as JSON for use outside the application.
+     *
+     * @return true if the file was written
+     */
+    public boolean exportGlobalData(File file) {
+        return saveData(app.data, file);
+    }
 
+    /**
+     * Records library mutations in the write-ahead journal instead of
+     * rewriting the whole library. Records are appended on the persistence
+     * thread; every {@value #COMPACT_AFTER_RECORDS} records the journal is
+     * folded into a fresh snapshot. Batches of that size skip the journal and
+     * only request the snapshot. Call on the event dispatch thread, after the
+     * change.
+     */
+    public void journal(JournalRecord... records) {
+        if (records.length >= COMPACT_AFTER_RECORDS) {
+            // a batch this large would be folded into a snapshot right away
+            saveGlobals();
+            return;
+        }
+        boolean compact;
+        synchronized (pendingRecords) {
+            for (JournalRecord record : records) {
+                record.sequence = journaled++;
+                pendingRecords.add(record);
+            }
+            compact = journaled - copiedUpTo >= COMPACT_AFTER_RECORDS;
+        }
+        saveScheduler.schedule("journal", this::writePendingRecords, 0);
+        if (compact) {
+            saveGlobals();
+        }
     }
 
+    private void writePendingRecords() {
+        List<JournalRecord> records;
+        synchronized (pendingRecords) {
+            records = new ArrayList<>(pendingRecords);
+            pendingRecords.clear();
+        }
+        if (records.isEmpty()) {
+            return;
+        }
+        try {
+            journal.append(records);
+            journalTail.addAll(records);
+        } catch (IOException e) {
+            // the snapshot is the fallback if the journal cannot be written
+            e.printStackTrace();
+            EventQueue.invokeLater(this::saveGlobals);
+        }
+    }
+
+    /**
+     * Requests a full snapshot of the library, which also empties the journal.
+     * The library is copied right away, which takes a few milliseconds, and
+     * the copy is encoded and written on the persistence thread. Requests
+     * arriving while one is pending replace its copy. Call on the thread that
+     * changes the library, the event dispatch thread.
+     */
     public void saveGlobals() {
-        System.out.println("Saving global data...");
         if (app.data == null) {
-            System.out.println("Warning: globalData is null, nothing to save.");
             return;
         }
-        saveData(app.data, new File(applicationPath + File.separator + "globalData.json"));
+        LibrarySnapshot.Copy copy = LibrarySnapshot.copy(app.data);
+        synchronized (pendingRecords) {
+            snapshotCopy = copy;
+            copiedUpTo = journaled;
+        }
+        saveScheduler.schedule("snapshot", this::writeSnapshot, SAVE_COALESCE_MS);
+    }
+
+    /**
+     * Blocks until all pending journal records and snapshots are on disk.
+     * Called when the application closes.
+     */
+    public void flush() {
+        saveScheduler.flush();
+    }
+
+    private void writeSnapshot() {
+        LibrarySnapshot.Copy copy;
+        long upTo;
+        synchronized (pendingRecords) {
+            copy = snapshotCopy;
+            upTo = copiedUpTo;
+            snapshotCopy = null;
+        }
+        if (copy == null) {
+            return;
+        }
+        System.out.println("Saving global data...");
+        // every record the copy contains is in the journal file before it is rewritten
+        writePendingRecords();
+        LibrarySnapshot.Written snapshot;
+        try {
+            snapshot = LibrarySnapshot.write(copy);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        File file = new File(applicationPath + File.separator + "library.bin");
+        Path tmp = writeTemporary(file, snapshot.bytes);
+        if (tmp == null) {
+            return;
+        }
+        // records made after the copy stay in the journal
+        journalTail.removeIf(record -> record.sequence < upTo);
+        long checksum = LibrarySnapshot.checksum(snapshot.bytes);
+        try {
+            // until the journal names it, the new snapshot would not be replayed onto
+            journal.mark(checksum, journalTail.size());
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        synchronized (SongDetailsSource.LOCK) {
+            // songs whose details are still on disk now read them from the new file
+            if (!replace(tmp, file)) {
+                return;
+            }
+            snapshot.bind(file);
+        }
+        try {
+            journal.truncate(checksum, journalTail);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Writes to a temporary file first and renames it over the target, so a
+     * crash mid-write never leaves a truncated file behind.
+     */
+    static boolean writeAtomically(File target, String content) {
+        return writeAtomically(target, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static boolean writeAtomically(File target, byte[] content) {
+        Path tmp = writeTemporary(target, content);
+        return tmp != null && replace(tmp, target);
+    }
+
+    /** @return the temporary file next to {@code target}, or null if it could not be written */
+    static Path writeTemporary(File target, byte[] content) {
+        Path tmp = target.toPath().resolveSibling(target.getName() + ".tmp");
+        try {
+            Files.write(tmp, content);
+            return tmp;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /** Renames {@code tmp} over {@code target}, atomically where supported. */
+    static boolean replace(Path tmp, File target) {
+        try {
+            try {
+                Files.move(tmp, target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
     }
 
     private ArrayList<File> getFolderContents(File folder) {
@@ -83,21 +428,8 @@ public class FileManager {
 
         // Set filename filter based on the filter type
         if (filter != FileFilter.NONE) {
-            final Set<String> extensions = switch (filter) {
-                case AUDIOFILE -> Set.of("mp3", "wav", "flac", "aiff", "aac", "ogg");
-                case SONGFILE -> Set.of("ast");
-                case PLAYLISTFILE -> Set.of("aspl");
-                case PROJECTFILE -> Set.of("asproj");
-                case ARTISTFILE -> Set.of("asart");
-                case IMAGEFILE -> Set.of("png", "jpg", "jpeg", "gif");
-                default -> Set.of();
-            };
-
-            if (!extensions.isEmpty()) {
-                fileDialog.setFilenameFilter((dir, name) -> {
-                    String lowerName = name.toLowerCase();
-                    return extensions.stream().anyMatch(ext -> lowerName.endsWith("." + ext));
-                });
+            if (!getExtensions(filter).isEmpty()) {
+                fileDialog.setFilenameFilter((dir, name) -> accepts(filter, name));
             }
         }
 
@@ -128,7 +460,25 @@ public class FileManager {
         return null;
     }
 
-    public void saveData(Data data, File file) {
+    /**
+     * Lets the user pick a single folder.
+     *
+     * @return the folder, or null if the dialog was cancelled
+     */
+    public File openFolderDialog() {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setDialogTitle("Track Folder");
+        chooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+        if (chooser.showOpenDialog(null) == JFileChooser.APPROVE_OPTION) {
+            return chooser.getSelectedFile();
+        }
+        return null;
+    }
+
+    /**
+     * @return true if the file was written
+     */
+    public boolean saveData(Data data, File file) {
         // Save data to a file, e.g. using Gson
         System.out.println("saveData called with data type: " + (data != null ? data.getClass().getName() : "null"));
         System.out.println("Saving to file: " + file.getAbsolutePath());
@@ -137,7 +487,7 @@ public class FileManager {
             data = (GlobalData) data;
             try {
                 String json = gson.toJson(data);
-                java.nio.file.Files.write(file.toPath(), json.getBytes());
+                return writeAtomically(file, json);
             } catch (Exception e) {
                 e.printStackTrace();
             }
@@ -145,7 +495,7 @@ public class FileManager {
             data = (SongData) data;
             try {
                 String json = gson.toJson(data);
-                java.nio.file.Files.write(file.toPath(), json.getBytes());
+                return writeAtomically(file, json);
             } catch (Exception e) {
                 e.printStackTrace();
             }
@@ -153,7 +503,7 @@ public class FileManager {
             data = (PlaylistData) data;
             try {
                 String json = gson.toJson(data);
-                java.nio.file.Files.write(file.toPath(), json.getBytes());
+                return writeAtomically(file, json);
             } catch (Exception e) {
                 e.printStackTrace();
             }
@@ -161,39 +511,21 @@ public class FileManager {
             data = (ProjectArtistData) data;
             try {
                 String json = gson.toJson(data);
-                java.nio.file.Files.write(file.toPath(), json.getBytes());
+                return writeAtomically(file, json);
             } catch (Exception e) {
                 e.printStackTrace();
             }
         }
-
+        return false;
     }
 
+    /**
+     * Returns the duration of an audio file in whole seconds, or 0 if it
+     * cannot be determined. Served from the {@link MetadataCache} unless the
+     * file is new or has changed.
+     */
     public static int getSongDurationSeconds(File file) {
-        try {
-            javax.sound.sampled.AudioFileFormat fileFormat = javax.sound.sampled.AudioSystem.getAudioFileFormat(file);
-
-            // For MP3 files (via MP3SPI), duration is available in properties as
-            // microseconds
-            java.util.Map<String, Object> properties = fileFormat.properties();
-            if (properties != null && properties.containsKey("duration")) {
-                Long microseconds = (Long) properties.get("duration");
-                if (microseconds != null) {
-                    return (int) (microseconds / 1_000_000);
-                }
-            }
-
-            // Fallback for standard audio formats (WAV, AIFF, etc.)
-            javax.sound.sampled.AudioFormat format = fileFormat.getFormat();
-            long frames = fileFormat.getFrameLength();
-            float frameRate = format.getFrameRate();
-            if (frames > 0 && frameRate > 0) {
-                return (int) (frames / frameRate);
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-        return 0; // Return 0 if duration cannot be determined
+        return MetadataCache.get().get(file).getDurationSeconds();
     }
 
 }
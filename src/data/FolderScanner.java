@@ -0,0 +1,221 @@
+package data;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+/**
+ * Finds the audio files below the tracked folders.
+ *
+ * Directories are walked in parallel on a fork-join pool. What each directory
+ * contained is remembered together with its modification time (in
+ * data/folderScan.json), so a re-scan only lists directories whose mtime
+ * changed, i.e. that had entries added, removed or renamed. Unchanged
+ * directories are only stat'ed to reach their subdirectories.
+ */
+public class FolderScanner {
+    // The scan state is written this long after a scan finished
+    private static final long SAVE_DELAY_MS = 1000;
+
+    /** Remembered contents of one directory. */
+    static class DirectoryState {
+        long lastModified;
+        ArrayList<String> audioFiles = new ArrayList<>();
+        ArrayList<String> subdirectories = new ArrayList<>();
+    }
+
+    private final File stateFile;
+    private final SaveScheduler saveScheduler;
+    private final Gson gson = new Gson();
+    private final Map<String, DirectoryState> directories = new ConcurrentHashMap<>();
+    private final ForkJoinPool pool = new ForkJoinPool(
+            Math.max(2, Runtime.getRuntime().availableProcessors()));
+
+    public FolderScanner(File stateFile, SaveScheduler saveScheduler) {
+        this.stateFile = stateFile;
+        this.saveScheduler = saveScheduler;
+        load();
+    }
+
+    /**
+     * Walks {@code folders} and returns every audio file below them. Blocks
+     * until done; call it off the EDT.
+     */
+    public synchronized List<File> scan(List<String> folders) {
+        long start = System.currentTimeMillis();
+        Queue<File> found = new ConcurrentLinkedQueue<>();
+        Set<String> visited = ConcurrentHashMap.newKeySet();
+        AtomicInteger listed = new AtomicInteger();
+
+        List<ScanTask> roots = new ArrayList<>();
+        for (String folder : folders) {
+            roots.add(new ScanTask(new File(folder), found, visited, listed));
+        }
+        pool.invoke(new RecursiveAction() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected void compute() {
+                invokeAll(roots);
+            }
+        });
+
+        // forget directories below the scanned folders that are gone
+        directories.keySet().removeIf(dir -> !visited.contains(dir) && isBelowAny(dir, folders));
+        if (listed.get() > 0) {
+            saveScheduler.schedule("folderScan", this::save, SAVE_DELAY_MS);
+        }
+        System.out.println("Scanned " + visited.size() + " folders (" + listed.get() + " changed), "
+                + found.size() + " audio files in " + (System.currentTimeMillis() - start) + " ms.");
+        return new ArrayList<>(found);
+    }
+
+    /**
+     * @return the directories below {@code root} (including it) known from
+     *         the last scans; all of them if {@code root} is null
+     */
+    public List<String> getDirectoriesBelow(String root) {
+        List<String> result = new ArrayList<>();
+        for (String dir : directories.keySet()) {
+            if (root == null || isBelow(dir, root)) {
+                result.add(dir);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Drops the state of a directory that was deleted, and of everything
+     * below it.
+     *
+     * @return true if {@code path} was a scanned directory
+     */
+    public boolean forget(String path) {
+        boolean known = directories.containsKey(path);
+        if (known) {
+            directories.keySet().removeIf(dir -> isBelow(dir, path));
+            saveScheduler.schedule("folderScan", this::save, SAVE_DELAY_MS);
+        }
+        return known;
+    }
+
+    static boolean isBelow(String path, String root) {
+        return path.equals(root) || path.startsWith(root.endsWith(File.separator) ? root : root + File.separator);
+    }
+
+    private static boolean isBelowAny(String path, List<String> roots) {
+        for (String root : roots) {
+            if (isBelow(path, root)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private class ScanTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final File dir;
+        private final Queue<File> found;
+        private final Set<String> visited;
+        private final AtomicInteger listed;
+
+        ScanTask(File dir, Queue<File> found, Set<String> visited, AtomicInteger listed) {
+            this.dir = dir;
+            this.found = found;
+            this.visited = visited;
+            this.listed = listed;
+        }
+
+        @Override
+        protected void compute() {
+            String path = dir.getPath();
+            if (!visited.add(path)) {
+                return; // nested tracked folders
+            }
+            long lastModified = dir.lastModified();
+            if (lastModified == 0) {
+                return; // does not exist (anymore)
+            }
+            DirectoryState state = directories.get(path);
+            if (state == null || state.lastModified != lastModified) {
+                state = list(lastModified);
+                if (state == null) {
+                    return;
+                }
+                directories.put(path, state);
+                listed.incrementAndGet();
+            }
+            for (String name : state.audioFiles) {
+                found.add(new File(dir, name));
+            }
+            List<ScanTask> subtasks = new ArrayList<>(state.subdirectories.size());
+            for (String name : state.subdirectories) {
+                subtasks.add(new ScanTask(new File(dir, name), found, visited, listed));
+            }
+            invokeAll(subtasks);
+        }
+
+        private DirectoryState list(long lastModified) {
+            String[] names = dir.list();
+            if (names == null) {
+                return null;
+            }
+            DirectoryState state = new DirectoryState();
+            state.lastModified = lastModified;
+            for (String name : names) {
+                if (name.startsWith(".")) {
+                    continue;
+                }
+                // classify by name first so audio files cost no extra stat
+                if (FileManager.accepts(FileManager.FileFilter.AUDIOFILE, name)) {
+                    state.audioFiles.add(name);
+                    continue;
+                }
+                File child = new File(dir, name);
+                if (child.isDirectory() && !Files.isSymbolicLink(child.toPath())) {
+                    state.subdirectories.add(name);
+                }
+            }
+            return state;
+        }
+    }
+
+    private void load() {
+        if (stateFile == null || !stateFile.exists()) {
+            return;
+        }
+        Type type = new TypeToken<HashMap<String, DirectoryState>>() {
+        }.getType();
+        try (InputStreamReader reader = new InputStreamReader(new FileInputStream(stateFile),
+                StandardCharsets.UTF_8)) {
+            Map<String, DirectoryState> loaded = gson.fromJson(reader, type);
+            if (loaded != null) {
+                directories.putAll(loaded);
+            }
+        } catch (Exception e) {
+            // without the state the next scan just lists everything again
+            System.err.println("Could not read folder scan state: " + e.getMessage());
+        }
+    }
+
+    private void save() {
+        FileManager.writeAtomically(stateFile, gson.toJson(new HashMap<>(directories)));
+    }
+}
@@ -0,0 +1,215 @@
+package data;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Watches the tracked folders for audio files being added, removed or
+ * rewritten.
+ *
+ * Events are debounced per path: a path is reported once nothing happened to
+ * it for {@value #QUIET_MS} ms, so a bounce that is written in many chunks
+ * produces a single change. Changes are delivered in batches on the watcher
+ * thread.
+ */
+public class FolderWatcher {
+    private static final long QUIET_MS = 400;
+
+    /** Paths that changed since the last batch. */
+    public static class Changes {
+        public final List<File> updated = new ArrayList<>(); // audio files that were added or rewritten
+        public final List<String> removed = new ArrayList<>(); // audio files or whole directories
+        // Set when events were lost and these tracked folders were scanned in
+        // full: updated then holds every audio file below them, and songs
+        // below them that are not among those may be gone
+        public List<String> rescanned;
+
+        public boolean isEmpty() {
+            return updated.isEmpty() && removed.isEmpty() && rescanned == null;
+        }
+    }
+
+    private final FolderScanner scanner;
+    private final Map<WatchKey, Path> keys = new HashMap<>();
+    private final Set<Path> watched = new HashSet<>();
+    // path -> time of its last event, in arrival order
+    private final Map<Path, Long> pending = new LinkedHashMap<>();
+    private WatchService watchService;
+    private Consumer<Changes> onChanges;
+    private List<String> roots = new ArrayList<>();
+
+    public FolderWatcher(FolderScanner scanner) {
+        this.scanner = scanner;
+    }
+
+    /**
+     * Starts the watcher thread. {@code onChanges} is called on that thread.
+     */
+    public synchronized void start(Consumer<Changes> onChanges) {
+        if (watchService != null) {
+            return;
+        }
+        this.onChanges = onChanges;
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        Thread thread = new Thread(this::run, "FolderWatcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Watches {@code directories} (all directories below the tracked folders,
+     * as found by the last scan). Directories that are already watched are
+     * skipped.
+     */
+    public synchronized void watch(List<String> roots, Collection<String> directories) {
+        this.roots = new ArrayList<>(roots);
+        for (String dir : directories) {
+            register(new File(dir).toPath());
+        }
+    }
+
+    private synchronized void register(Path dir) {
+        if (watchService == null || !watched.add(dir)) {
+            return;
+        }
+        try {
+            keys.put(dir.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY), dir);
+        } catch (IOException e) {
+            System.err.println("Cannot watch " + dir + ": " + e.getMessage());
+        }
+    }
+
+    private synchronized boolean isWatched(Path dir) {
+        return watched.contains(dir);
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                WatchKey key;
+                if (pending.isEmpty()) {
+                    key = watchService.take();
+                } else {
+                    long wait = pending.values().iterator().next() + QUIET_MS - System.currentTimeMillis();
+                    key = watchService.poll(Math.max(wait, 1), TimeUnit.MILLISECONDS);
+                }
+                if (key != null) {
+                    collect(key);
+                }
+                deliver(System.currentTimeMillis() - QUIET_MS);
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // shutting down
+        }
+    }
+
+    private void collect(WatchKey key) {
+        Path dir;
+        synchronized (this) {
+            dir = keys.get(key);
+        }
+        long now = System.currentTimeMillis();
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+                rescan();
+                continue;
+            }
+            if (dir == null) {
+                continue;
+            }
+            Path path = dir.resolve((Path) event.context());
+            // re-insert so the map stays ordered by last event
+            pending.remove(path);
+            pending.put(path, now);
+        }
+        if (!key.reset()) {
+            // the directory is gone
+            synchronized (this) {
+                watched.remove(keys.remove(key));
+            }
+        }
+    }
+
+    /**
+     * Reports all paths that have been quiet since {@code quietSince}.
+     */
+    private void deliver(long quietSince) {
+        Changes changes = new Changes();
+        Iterator<Map.Entry<Path, Long>> it = pending.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Path, Long> entry = it.next();
+            if (entry.getValue() > quietSince) {
+                break; // the rest is newer
+            }
+            it.remove();
+            classify(entry.getKey(), changes);
+        }
+        if (!changes.isEmpty() && onChanges != null) {
+            onChanges.accept(changes);
+        }
+    }
+
+    private void classify(Path path, Changes changes) {
+        File file = path.toFile();
+        if (file.isDirectory()) {
+            if (isWatched(path)) {
+                return; // its own watch reports what changed inside
+            }
+            // a folder was created or moved in: watch it and pick up its contents
+            changes.updated.addAll(scanner.scan(List.of(file.getPath())));
+            for (String dir : scanner.getDirectoriesBelow(file.getPath())) {
+                register(new File(dir).toPath());
+            }
+        } else if (FileManager.accepts(FileManager.FileFilter.AUDIOFILE, file.getName())) {
+            if (file.exists()) {
+                // read the metadata here so the EDT does not have to
+                MetadataCache.get().get(file);
+                changes.updated.add(file);
+            } else {
+                changes.removed.add(file.getPath());
+            }
+        } else if (scanner.forget(file.getPath())) {
+            changes.removed.add(file.getPath()); // a scanned directory was deleted or moved away
+        }
+    }
+
+    private void rescan() {
+        pending.clear();
+        Changes changes = new Changes();
+        changes.rescanned = new ArrayList<>(roots);
+        changes.updated.addAll(scanner.scan(roots));
+        for (String dir : scanner.getDirectoriesBelow(null)) {
+            register(new File(dir).toPath());
+        }
+        if (onChanges != null) {
+            onChanges.accept(changes);
+        }
+    }
+}
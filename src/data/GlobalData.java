@@ -1,16 +1,27 @@
 package data;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class GlobalData extends Data {
     public String guiStyle;
     public ArrayList<PlaylistData> playlists;
     public ArrayList<ProjectArtistData> projectsArtists;
     public ArrayList<VersionedSongData> songs;
-    public HashMap<String, SongData> allSongs; // for quick lookup by file path
+    public HashMap<SongPath, SongData> allSongs; // for quick lookup by file path
     public ArrayList<String> trackedFolders;
-    public Object sortedByObject; // can be a playlist or a project/artist, used to sort the songs list in the UI
+    public ArrayList<AssignmentRule> assignmentRules; // used by "Sort songs to artists", in order
+    public transient Object sortedByObject; // can be a playlist or a project/artist, used to sort the songs list in the UI
+    long nextId = 1; // next free entity id
+    private transient LibraryIndex index;
+    private transient SearchIndex searchIndex;
+    private transient VersionClusterer.Matcher versionMatcher;
 
     public String getGuiStyle() {
         return guiStyle;
@@ -31,12 +42,88 @@ public class GlobalData extends Data {
         return songs;
     }
 
+    public void addVersionedSong(VersionedSongData versionedSong) {
+        versionedSong.id = registerId(versionedSong.id);
+        getVersionedSongs().add(versionedSong);
+    }
+
     public void removeVersionedSong(VersionedSongData versionedSongToRemove) {
         if (songs != null) {
             songs.remove(versionedSongToRemove);
         }
     }
 
+    /**
+     * Removes several versioned songs in one pass over the list.
+     */
+    public void removeVersionedSongs(Collection<VersionedSongData> toRemove) {
+        if (songs != null && !toRemove.isEmpty()) {
+            Set<VersionedSongData> set = Collections.newSetFromMap(new IdentityHashMap<>());
+            set.addAll(toRemove);
+            songs.removeIf(set::contains);
+        }
+    }
+
+    /**
+     * Takes songs out of their versioned songs. Versioned songs that end up
+     * without versions are removed from the library.
+     *
+     * @return the versioned songs that were removed
+     */
+    public List<VersionedSongData> removeVersions(Collection<SongData> versions) {
+        List<VersionedSongData> emptied = new ArrayList<>();
+        for (SongData version : versions) {
+            VersionedSongData parent = version.getParent();
+            if (parent == null)
+                continue;
+            parent.removeSong(version);
+            if (parent.getVersions().isEmpty()) {
+                emptied.add(parent);
+            }
+        }
+        removeVersionedSongs(emptied);
+        return emptied;
+    }
+
+    /**
+     * Makes {@code song} a version of {@code target}. Its previous versioned
+     * song is removed from the library if this leaves it empty.
+     *
+     * @return the previous versioned song, or null
+     */
+    public VersionedSongData moveVersion(SongData song, VersionedSongData target) {
+        VersionedSongData previous = song.getParent();
+        moveVersions(Map.of(song, target));
+        return previous;
+    }
+
+    /**
+     * Moves each song to the versioned song it is mapped to. Versioned songs
+     * left empty are removed in one pass.
+     *
+     * @return the versioned songs that were removed
+     */
+    public List<VersionedSongData> moveVersions(Map<SongData, VersionedSongData> moves) {
+        List<VersionedSongData> emptied = new ArrayList<>();
+        for (Map.Entry<SongData, VersionedSongData> move : moves.entrySet()) {
+            SongData song = move.getKey();
+            VersionedSongData previous = song.getParent();
+            if (previous == move.getValue()) {
+                continue;
+            }
+            if (previous != null) {
+                previous.removeSong(song);
+                if (previous.getVersions().isEmpty()) {
+                    emptied.add(previous);
+                }
+            }
+            move.getValue().addSong(song);
+        }
+        emptied.removeIf(vsd -> !vsd.getVersions().isEmpty()); // refilled by a later move
+        removeVersionedSongs(emptied);
+        return emptied;
+    }
+
     public ArrayList<SongData> getSongs() {
         if (allSongs != null) {
             return new ArrayList<>(allSongs.values());
@@ -45,9 +132,25 @@ public class GlobalData extends Data {
         }
     }
 
+    /**
+     * The songs of the library, without copying them. Must not be modified
+     * and is only valid until the library changes.
+     */
+    public Collection<SongData> getSongsView() {
+        return allSongs != null ? Collections.unmodifiableCollection(allSongs.values()) : List.of();
+    }
+
+    public int getSongCount() {
+        return allSongs != null ? allSongs.size() : 0;
+    }
+
     public SongData getSong(String filePath) {
-        if (songs != null) {
-            return allSongs.get(filePath);
+        return getSong(SongPath.find(filePath));
+    }
+
+    public SongData getSong(SongPath path) {
+        if (allSongs != null && path != null) {
+            return allSongs.get(path);
         } else {
             return null;
         }
@@ -57,6 +160,14 @@ public class GlobalData extends Data {
         return trackedFolders;
     }
 
+    public ArrayList<AssignmentRule> getAssignmentRules() {
+        return assignmentRules;
+    }
+
+    public void setAssignmentRules(ArrayList<AssignmentRule> assignmentRules) {
+        this.assignmentRules = assignmentRules;
+    }
+
     public void setGuiStyle(String guiStyle) {
         this.guiStyle = guiStyle;
     }
@@ -75,13 +186,173 @@ public class GlobalData extends Data {
 
     public ArrayList<SongData> getSongsSorted() {
 
-        ArrayList<SongData> songsList = getSongs();
-        if (sortedByObject instanceof PlaylistData) {
-            return getSongsByPaths(((PlaylistData) sortedByObject).getSongPaths());
-        } else if (sortedByObject instanceof ProjectArtistData) {
-            return getSongsByPaths(((ProjectArtistData) sortedByObject).getSongPaths());
+        if (sortedByObject instanceof PlaylistData || sortedByObject instanceof ProjectArtistData) {
+            return new ArrayList<>(getSongsOf(sortedByObject));
         } else {
-            return songsList;
+            return getSongs();
+        }
+    }
+
+    /**
+     * Returns the songs of a playlist or project/artist in their order. The
+     * list is served from the index and must not be modified.
+     */
+    public List<SongData> getSongsOf(Object group) {
+        if (group instanceof PlaylistData) {
+            return index().songsOf(group, ((PlaylistData) group).getSongPaths());
+        } else if (group instanceof ProjectArtistData) {
+            return index().songsOf(group, ((ProjectArtistData) group).getSongPaths());
+        }
+        return new ArrayList<>();
+    }
+
+    /**
+     * Returns the songs that are in both groups (playlists or
+     * projects/artists), in the order of {@code group}.
+     */
+    public List<SongData> getSongsOf(Object group, Object alsoIn) {
+        SongSet members = membersOf(group);
+        SongSet others = membersOf(alsoIn);
+        List<SongData> result = new ArrayList<>();
+        if (members == null || others == null) {
+            return result;
+        }
+        for (SongPath path : members.and(others)) {
+            SongData song = getSong(path);
+            if (song != null) {
+                result.add(song);
+            }
+        }
+        return result;
+    }
+
+    private static SongSet membersOf(Object group) {
+        if (group instanceof PlaylistData) {
+            return ((PlaylistData) group).getSongPaths();
+        } else if (group instanceof ProjectArtistData) {
+            return ((ProjectArtistData) group).getSongPaths();
+        }
+        return null;
+    }
+
+    /**
+     * The full-text index over the library, built on its first search.
+     */
+    public SearchIndex getSearchIndex() {
+        if (searchIndex == null) {
+            searchIndex = new SearchIndex(this);
+        }
+        return searchIndex;
+    }
+
+    /**
+     * The library blocked for version matching, built on first use and
+     * kept up to date as songs are added and removed.
+     */
+    public VersionClusterer.Matcher getVersionMatcher() {
+        if (versionMatcher == null) {
+            versionMatcher = new VersionClusterer.Matcher();
+            for (SongData song : getSongsView()) {
+                versionMatcher.add(song);
+            }
+        }
+        return versionMatcher;
+    }
+
+    private LibraryIndex index() {
+        if (allSongs == null) {
+            allSongs = new HashMap<>();
+        }
+        if (index == null) {
+            index = new LibraryIndex(allSongs);
+        }
+        return index;
+    }
+
+    public void addSongToPlaylist(PlaylistData playlist, SongData song) {
+        playlist.addSong(song);
+        index().memberAdded(playlist, song);
+    }
+
+    public void removeSongFromPlaylist(PlaylistData playlist, SongData song) {
+        playlist.removeSong(song);
+        index().memberRemoved(playlist, song);
+    }
+
+    /**
+     * Makes {@code project} an owner of {@code song}, updating both sides of
+     * the relation. Does nothing if it already is one.
+     */
+    public void assignSongToProject(ProjectArtistData project, SongData song) {
+        if (project.getSongPaths() == null || !project.getSongPaths().contains(song.getPath())) {
+            project.addSong(song);
+            index().memberAdded(project, song);
+        }
+        if (song.getOwners() == null) {
+            song.setOwners(new ArrayList<>());
+        }
+        if (!song.getOwners().contains(project)) {
+            song.getOwners().add(project);
+            if (searchIndex != null) {
+                searchIndex.ownerAdded(project, List.of(song));
+            }
+        }
+    }
+
+    /**
+     * Makes {@code project} an owner of all {@code songs}, as
+     * {@link #assignSongToProject} would, but indexes them for search in one
+     * go.
+     */
+    public void assignSongsToProject(ProjectArtistData project, List<SongData> songs) {
+        if (project.getSongPaths() == null) {
+            project.setSongPaths(new SongSet(songs.size()));
+        }
+        List<SongData> changed = new ArrayList<>(songs.size());
+        for (SongData song : songs) {
+            if (!project.getSongPaths().contains(song.getPath())) {
+                project.addSong(song);
+                index().memberAdded(project, song);
+            }
+            if (song.getOwners() == null) {
+                song.setOwners(new ArrayList<>());
+            }
+            if (!song.getOwners().contains(project)) {
+                song.getOwners().add(project);
+                changed.add(song);
+            }
+        }
+        if (searchIndex != null) {
+            searchIndex.ownerAdded(project, changed);
+        }
+    }
+
+    public void unassignSongFromProject(ProjectArtistData project, SongData song) {
+        project.removeSong(song);
+        index().memberRemoved(project, song);
+        if (song.getOwners() != null && song.getOwners().remove(project) && searchIndex != null) {
+            searchIndex.update(List.of(song));
+        }
+    }
+
+    /**
+     * Takes {@code project} off all {@code songs}. The project's resolved
+     * song list is dropped and rebuilt on next access instead of removing
+     * the songs one by one.
+     */
+    public void unassignSongsFromProject(ProjectArtistData project, List<SongData> songs) {
+        List<SongData> changed = new ArrayList<>(songs.size());
+        for (SongData song : songs) {
+            project.removeSong(song);
+            if (song.getOwners() != null && song.getOwners().remove(project)) {
+                changed.add(song);
+            }
+        }
+        if (index != null) {
+            index.groupRemoved(project);
+        }
+        if (searchIndex != null) {
+            searchIndex.update(changed);
         }
     }
 
@@ -94,11 +365,19 @@ public class GlobalData extends Data {
         if (allSongs == null) {
             allSongs = new HashMap<>();
         }
-        if (allSongs.containsValue(newSong)) {
+        if (allSongs.containsKey(newSong.getPath())) {
             return false;
         }
 
-        allSongs.put(newSong.getFilePath(), newSong);
+        newSong.id = registerId(newSong.id);
+        allSongs.put(newSong.getPath(), newSong);
+        index().songAdded(newSong);
+        if (versionMatcher != null) {
+            versionMatcher.add(newSong);
+        }
+        if (searchIndex != null) {
+            searchIndex.songAdded(newSong);
+        }
         return true;
     }
 
@@ -106,6 +385,7 @@ public class GlobalData extends Data {
         if (playlists == null) {
             playlists = new ArrayList<>();
         }
+        newPlaylist.id = registerId(newPlaylist.id);
         playlists.add(newPlaylist);
     }
 
@@ -113,9 +393,177 @@ public class GlobalData extends Data {
         if (projectsArtists == null) {
             projectsArtists = new ArrayList<>();
         }
+        newProjectArtist.id = registerId(newProjectArtist.id);
         projectsArtists.add(newProjectArtist);
     }
 
+    public PlaylistData getPlaylistById(long id) {
+        if (playlists != null) {
+            for (PlaylistData playlist : playlists) {
+                if (playlist.id == id) {
+                    return playlist;
+                }
+            }
+        }
+        return null;
+    }
+
+    public ProjectArtistData getProjectArtistById(long id) {
+        if (projectsArtists != null) {
+            for (ProjectArtistData pa : projectsArtists) {
+                if (pa.id == id) {
+                    return pa;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns {@code id} if set, otherwise a fresh one, and makes sure
+     * {@link #nextId} stays ahead of all ids in use.
+     */
+    private long registerId(long id) {
+        if (id <= 0) {
+            id = nextId;
+        }
+        nextId = Math.max(nextId, id + 1);
+        return id;
+    }
+
+    /**
+     * Restores what the snapshot does not hold directly: ids for entries saved
+     * before ids existed, and object identity between songs, their versions
+     * and their owners, which are stored as id references (or, in older
+     * snapshots, as separate copies).
+     */
+    void afterLoad() {
+        // first make nextId skip every id in use, then hand out fresh ones
+        List<Object> entities = new ArrayList<>();
+        if (playlists != null)
+            entities.addAll(playlists);
+        if (projectsArtists != null)
+            entities.addAll(projectsArtists);
+        if (allSongs != null)
+            entities.addAll(allSongs.values());
+        if (songs != null)
+            entities.addAll(songs);
+        for (Object entity : entities) {
+            registerId(idOf(entity));
+        }
+        for (Object entity : entities) {
+            if (idOf(entity) <= 0) {
+                setId(entity, registerId(0));
+            }
+        }
+
+        HashMap<Long, SongData> songsById = new HashMap<>();
+        if (allSongs != null) {
+            for (SongData song : allSongs.values()) {
+                songsById.put(song.id, song);
+            }
+        }
+        HashMap<Long, ProjectArtistData> projectsById = new HashMap<>();
+        if (projectsArtists != null) {
+            for (ProjectArtistData pa : projectsArtists) {
+                projectsById.put(pa.id, pa);
+            }
+        }
+
+        if (songs != null) {
+            for (VersionedSongData vsd : songs) {
+                ArrayList<SongData> versions = vsd.getVersions();
+                for (int i = versions.size() - 1; i >= 0; i--) {
+                    SongData version = resolveSong(versions.get(i), songsById);
+                    if (version == null) {
+                        versions.remove(i);
+                    } else {
+                        versions.set(i, version);
+                        version.setParent(vsd);
+                    }
+                }
+                if (vsd.starred != null) {
+                    vsd.starred = resolveSong(vsd.starred, songsById);
+                }
+            }
+        }
+        if (allSongs != null) {
+            for (SongData song : allSongs.values()) {
+                resolveProjects(song.getOwners(), projectsById);
+            }
+        }
+        if (projectsArtists != null) {
+            for (ProjectArtistData pa : projectsArtists) {
+                if (pa.owner != null) {
+                    pa.owner = resolveProject(pa.owner, projectsById);
+                }
+                resolveProjects(pa.children, projectsById);
+            }
+        }
+    }
+
+    private static long idOf(Object entity) {
+        if (entity instanceof SongData)
+            return ((SongData) entity).id;
+        if (entity instanceof VersionedSongData)
+            return ((VersionedSongData) entity).id;
+        if (entity instanceof ProjectArtistData)
+            return ((ProjectArtistData) entity).id;
+        return ((PlaylistData) entity).id;
+    }
+
+    private static void setId(Object entity, long id) {
+        if (entity instanceof SongData)
+            ((SongData) entity).id = id;
+        else if (entity instanceof VersionedSongData)
+            ((VersionedSongData) entity).id = id;
+        else if (entity instanceof ProjectArtistData)
+            ((ProjectArtistData) entity).id = id;
+        else
+            ((PlaylistData) entity).id = id;
+    }
+
+    /**
+     * @return the stored song a reference or legacy copy stands for; the copy
+     *         itself if it is not in the library; null for a dangling reference
+     */
+    private SongData resolveSong(SongData ref, HashMap<Long, SongData> songsById) {
+        SongData song = ref.id > 0 ? songsById.get(ref.id) : null;
+        if (song == null && ref.getPath() != null) {
+            song = allSongs != null ? allSongs.get(ref.getPath()) : null;
+            if (song == null) {
+                song = ref;
+            }
+        }
+        return song;
+    }
+
+    private ProjectArtistData resolveProject(ProjectArtistData ref, HashMap<Long, ProjectArtistData> projectsById) {
+        ProjectArtistData pa = ref.id > 0 ? projectsById.get(ref.id) : null;
+        if (pa == null && projectsArtists != null && ref.getName() != null) {
+            for (ProjectArtistData candidate : projectsArtists) {
+                if (ref.getName().equals(candidate.getName())) {
+                    return candidate;
+                }
+            }
+        }
+        return pa;
+    }
+
+    private void resolveProjects(List<ProjectArtistData> refs, HashMap<Long, ProjectArtistData> projectsById) {
+        if (refs == null) {
+            return;
+        }
+        for (int i = refs.size() - 1; i >= 0; i--) {
+            ProjectArtistData pa = resolveProject(refs.get(i), projectsById);
+            if (pa == null) {
+                refs.remove(i);
+            } else {
+                refs.set(i, pa);
+            }
+        }
+    }
+
     public void addTrackedFolder(String newFolder) {
         if (trackedFolders == null) {
             trackedFolders = new ArrayList<>();
@@ -124,8 +572,14 @@ public class GlobalData extends Data {
     }
 
     public void removeSong(SongData songToRemove) {
-        if (songs != null) {
-            songs.remove(songToRemove.getFilePath());
+        if (allSongs != null && allSongs.remove(songToRemove.getPath()) != null) {
+            index().songRemoved(songToRemove);
+            if (versionMatcher != null) {
+                versionMatcher.remove(songToRemove);
+            }
+            if (searchIndex != null) {
+                searchIndex.songRemoved(songToRemove);
+            }
         }
     }
 
@@ -133,12 +587,18 @@ public class GlobalData extends Data {
         if (playlists != null) {
             playlists.remove(playlistToRemove);
         }
+        if (index != null) {
+            index.groupRemoved(playlistToRemove);
+        }
     }
 
     public void removeProjectArtist(ProjectArtistData projectArtistToRemove) {
         if (projectsArtists != null) {
             projectsArtists.remove(projectArtistToRemove);
         }
+        if (index != null) {
+            index.groupRemoved(projectArtistToRemove);
+        }
     }
 
     public void removeTrackedFolder(String folderToRemove) {
@@ -147,32 +607,4 @@ public class GlobalData extends Data {
         }
     }
 
-    private ArrayList<SongData> getSongsByPaths(ArrayList<String> paths) {
-        if (paths == null) {
-            return new ArrayList<>();
-        }
-        ArrayList<SongData> result = new ArrayList<>();
-        if (songs != null) {
-            for (String path : paths) {
-                SongData song = getSongByPath(path);
-                if (song != null) {
-                    result.add(song);
-                }
-            }
-        }
-        return result;
-    }
-
-    private SongData getSongByPath(String path) {
-        ArrayList<SongData> songs = getSongs();
-        if (songs != null) {
-            for (SongData song : songs) {
-                if (song.getFilePath().equals(path)) {
-                    return song;
-                }
-            }
-        }
-        return null;
-    }
-
 }
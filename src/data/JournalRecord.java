@@ -0,0 +1,347 @@
+package data;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * A single library mutation as written to the {@link MutationJournal}.
+ * Records only carry what the mutation touched, so their size does not depend
+ * on the size of the library. Which fields are set depends on the {@link Op}.
+ */
+public class JournalRecord {
+
+    public enum Op {
+        SONG_ADD,
+        SONG_REMOVE,
+        PLAYLIST_ADD,
+        PLAYLIST_REMOVE,
+        PLAYLIST_RENAME,
+        PLAYLIST_SONG_ADD,
+        PLAYLIST_SONG_REMOVE,
+        PROJECT_ADD,
+        PROJECT_REMOVE,
+        PROJECT_RENAME,
+        PROJECT_ASSIGN,
+        PROJECT_UNASSIGN,
+        FOLDER_TRACK,
+        FOLDER_UNTRACK,
+        VERSION_JOIN,
+        VERSION_SPLIT,
+        RULES_SET,
+        SNAPSHOT
+    }
+
+    Op op;
+    long id; // playlist / project id
+    String path; // song file path or tracked folder
+    String title; // song title, playlist title or project name
+    String artist;
+    long duration;
+    long created;
+    ArrayList<String> paths; // songs of a (re-)added playlist or project
+    String target; // song whose versions the song at path joined
+    ArrayList<AssignmentRule> rules; // all assignment rules after the change
+    long snapshot; // checksum of the snapshot the following records apply to
+    int kept; // records before a SNAPSHOT marker that the snapshot does not contain
+    transient long sequence; // order in which the record was journaled
+
+    public Op getOp() {
+        return op;
+    }
+
+    private static JournalRecord of(Op op) {
+        JournalRecord r = new JournalRecord();
+        r.op = op;
+        return r;
+    }
+
+    public static JournalRecord songAdded(SongData song) {
+        JournalRecord r = of(Op.SONG_ADD);
+        r.path = song.getFilePath();
+        r.title = song.getTitle();
+        r.artist = song.getGuessedArtist();
+        r.duration = song.durationSeconds;
+        return r;
+    }
+
+    public static JournalRecord songRemoved(SongData song) {
+        JournalRecord r = of(Op.SONG_REMOVE);
+        r.path = song.getFilePath();
+        return r;
+    }
+
+    public static JournalRecord playlistAdded(PlaylistData playlist) {
+        JournalRecord r = of(Op.PLAYLIST_ADD);
+        r.id = playlist.getId();
+        r.title = playlist.getTitle();
+        if (playlist.getSongPaths() != null) {
+            r.paths = toStrings(playlist.getSongPaths());
+        }
+        return r;
+    }
+
+    public static JournalRecord playlistRemoved(PlaylistData playlist) {
+        JournalRecord r = of(Op.PLAYLIST_REMOVE);
+        r.id = playlist.getId();
+        return r;
+    }
+
+    public static JournalRecord playlistRenamed(PlaylistData playlist) {
+        JournalRecord r = of(Op.PLAYLIST_RENAME);
+        r.id = playlist.getId();
+        r.title = playlist.getTitle();
+        return r;
+    }
+
+    public static JournalRecord playlistSongAdded(PlaylistData playlist, SongData song) {
+        JournalRecord r = of(Op.PLAYLIST_SONG_ADD);
+        r.id = playlist.getId();
+        r.path = song.getFilePath();
+        return r;
+    }
+
+    public static JournalRecord playlistSongRemoved(PlaylistData playlist, SongData song) {
+        JournalRecord r = of(Op.PLAYLIST_SONG_REMOVE);
+        r.id = playlist.getId();
+        r.path = song.getFilePath();
+        return r;
+    }
+
+    public static JournalRecord projectAdded(ProjectArtistData project) {
+        JournalRecord r = of(Op.PROJECT_ADD);
+        r.id = project.getId();
+        r.title = project.getName();
+        r.created = project.getCreated() != null ? project.getCreated().getTime() : 0;
+        if (project.getSongPaths() != null) {
+            r.paths = toStrings(project.getSongPaths());
+        }
+        return r;
+    }
+
+    public static JournalRecord projectRemoved(ProjectArtistData project) {
+        JournalRecord r = of(Op.PROJECT_REMOVE);
+        r.id = project.getId();
+        return r;
+    }
+
+    public static JournalRecord projectRenamed(ProjectArtistData project) {
+        JournalRecord r = of(Op.PROJECT_RENAME);
+        r.id = project.getId();
+        r.title = project.getName();
+        return r;
+    }
+
+    public static JournalRecord songAssigned(ProjectArtistData project, SongData song) {
+        JournalRecord r = of(Op.PROJECT_ASSIGN);
+        r.id = project.getId();
+        r.path = song.getFilePath();
+        return r;
+    }
+
+    public static JournalRecord songUnassigned(ProjectArtistData project, SongData song) {
+        JournalRecord r = of(Op.PROJECT_UNASSIGN);
+        r.id = project.getId();
+        r.path = song.getFilePath();
+        return r;
+    }
+
+    public static JournalRecord folderTracked(String folder) {
+        JournalRecord r = of(Op.FOLDER_TRACK);
+        r.path = folder;
+        return r;
+    }
+
+    public static JournalRecord folderUntracked(String folder) {
+        JournalRecord r = of(Op.FOLDER_UNTRACK);
+        r.path = folder;
+        return r;
+    }
+
+    /** {@code song} became a version of the same song as {@code target}. */
+    public static JournalRecord versionJoined(SongData song, SongData target) {
+        JournalRecord r = of(Op.VERSION_JOIN);
+        r.path = song.getFilePath();
+        r.target = target.getFilePath();
+        return r;
+    }
+
+    /** {@code song} was taken out of its versions into a versioned song of its own. */
+    public static JournalRecord versionSplit(SongData song) {
+        JournalRecord r = of(Op.VERSION_SPLIT);
+        r.path = song.getFilePath();
+        return r;
+    }
+
+    /** The assignment rules were replaced by {@code rules}. */
+    public static JournalRecord rulesChanged(List<AssignmentRule> rules) {
+        JournalRecord r = of(Op.RULES_SET);
+        r.rules = rules != null ? new ArrayList<>(rules) : null;
+        return r;
+    }
+
+    /**
+     * Marks where a snapshot with the given checksum was taken: it contains
+     * every record before this one except the last {@code kept}.
+     */
+    static JournalRecord snapshot(long checksum, int kept) {
+        JournalRecord r = of(Op.SNAPSHOT);
+        r.snapshot = checksum;
+        r.kept = kept;
+        return r;
+    }
+
+    /**
+     * Re-applies this mutation to {@code data}, which must be the library as
+     * it was when the mutation was journaled. Replay is not idempotent
+     * (renames, splits and rule changes apply again), so
+     * {@link MutationJournal#replay} only replays the records made after the
+     * snapshot {@code data} was loaded from. Records about songs, playlists
+     * or projects that do not exist are skipped.
+     */
+    void applyTo(GlobalData data) {
+        switch (op) {
+            case SONG_ADD: {
+                if (data.getSong(path) != null)
+                    return;
+                SongData song = new SongData();
+                song.setFilePath(path);
+                song.setTitle(title);
+                song.setGuessedArtist(artist);
+                song.setDurationSeconds(duration);
+                data.putSong(song);
+                VersionedSongData vsd = new VersionedSongData();
+                vsd.addSong(song);
+                data.addVersionedSong(vsd);
+                return;
+            }
+            case SONG_REMOVE: {
+                SongData song = data.getSong(path);
+                if (song == null)
+                    return;
+                data.removeSong(song);
+                data.removeVersions(List.of(song));
+                return;
+            }
+            case PLAYLIST_ADD: {
+                if (data.getPlaylistById(id) != null)
+                    return;
+                PlaylistData playlist = new PlaylistData();
+                playlist.id = id;
+                playlist.setTitle(title);
+                playlist.songPaths = toPaths(paths);
+                data.addPlaylist(playlist);
+                return;
+            }
+            case PLAYLIST_REMOVE:
+                data.removePlaylist(data.getPlaylistById(id));
+                return;
+            case PLAYLIST_RENAME: {
+                PlaylistData playlist = data.getPlaylistById(id);
+                if (playlist != null)
+                    playlist.setTitle(title);
+                return;
+            }
+            case PLAYLIST_SONG_ADD: {
+                PlaylistData playlist = data.getPlaylistById(id);
+                SongData song = data.getSong(path);
+                if (playlist == null || song == null)
+                    return;
+                data.addSongToPlaylist(playlist, song);
+                return;
+            }
+            case PLAYLIST_SONG_REMOVE: {
+                PlaylistData playlist = data.getPlaylistById(id);
+                SongData song = data.getSong(path);
+                if (playlist == null || song == null)
+                    return;
+                data.removeSongFromPlaylist(playlist, song);
+                return;
+            }
+            case PROJECT_ADD: {
+                if (data.getProjectArtistById(id) != null)
+                    return;
+                ProjectArtistData project = new ProjectArtistData();
+                project.id = id;
+                project.setName(title);
+                project.setCreated(created != 0 ? new Date(created) : null);
+                project.setSongPaths(toPaths(paths));
+                data.addProjectArtist(project);
+                return;
+            }
+            case PROJECT_REMOVE:
+                data.removeProjectArtist(data.getProjectArtistById(id));
+                return;
+            case PROJECT_RENAME: {
+                ProjectArtistData project = data.getProjectArtistById(id);
+                if (project != null)
+                    project.setName(title);
+                return;
+            }
+            case PROJECT_ASSIGN: {
+                ProjectArtistData project = data.getProjectArtistById(id);
+                SongData song = data.getSong(path);
+                if (project == null || song == null)
+                    return;
+                data.assignSongToProject(project, song);
+                return;
+            }
+            case PROJECT_UNASSIGN: {
+                ProjectArtistData project = data.getProjectArtistById(id);
+                SongData song = data.getSong(path);
+                if (project == null || song == null)
+                    return;
+                data.unassignSongFromProject(project, song);
+                return;
+            }
+            case FOLDER_TRACK:
+                if (data.getTrackedFolders() == null || !data.getTrackedFolders().contains(path))
+                    data.addTrackedFolder(path);
+                return;
+            case FOLDER_UNTRACK:
+                data.removeTrackedFolder(path);
+                return;
+            case VERSION_JOIN: {
+                SongData song = data.getSong(path);
+                SongData other = data.getSong(target);
+                if (song == null || other == null || other.getParent() == null || song.getParent() == other.getParent())
+                    return;
+                data.moveVersion(song, other.getParent());
+                return;
+            }
+            case VERSION_SPLIT: {
+                SongData song = data.getSong(path);
+                if (song == null || (song.getParent() != null && song.getParent().getVersions().size() == 1))
+                    return;
+                VersionedSongData own = new VersionedSongData();
+                data.addVersionedSong(own);
+                data.moveVersion(song, own);
+                return;
+            }
+            case RULES_SET:
+                data.setAssignmentRules(rules != null ? new ArrayList<>(rules) : null);
+                return;
+            case SNAPSHOT:
+                return;
+        }
+    }
+
+    private static ArrayList<String> toStrings(SongSet paths) {
+        ArrayList<String> strings = new ArrayList<>(paths.size());
+        for (SongPath path : paths) {
+            strings.add(path.toString());
+        }
+        return strings;
+    }
+
+    private static SongSet toPaths(List<String> strings) {
+        if (strings == null) {
+            return null;
+        }
+        SongSet paths = new SongSet(strings.size());
+        for (String s : strings) {
+            paths.add(SongPath.of(s));
+        }
+        return paths;
+    }
+}
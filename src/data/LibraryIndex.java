@@ -0,0 +1,164 @@
+package data;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lookup indexes over the library that are not serialized: the resolved songs
+ * of each playlist and project (in their order), plus which playlists and
+ * projects reference a path.
+ *
+ * A group's song list is resolved once, on first access, and from then on
+ * kept up to date by {@link GlobalData}'s mutators, so filtering the song
+ * list by a playlist or project costs O(k) in the size of the result instead
+ * of a scan of the whole library.
+ */
+class LibraryIndex {
+    private final Map<SongPath, SongData> songsByPath;
+    // PlaylistData / ProjectArtistData -> resolved songs
+    private final Map<Object, ArrayList<SongData>> songsByGroup = new IdentityHashMap<>();
+    // path -> groups whose resolved list references it
+    private final Map<SongPath, List<Object>> groupsByPath = new HashMap<>();
+    // group -> the paths it references, in the order of its song list
+    private final Map<Object, SongSet> pathsByGroup = new IdentityHashMap<>();
+
+    LibraryIndex(Map<SongPath, SongData> songsByPath) {
+        this.songsByPath = songsByPath;
+    }
+
+    /**
+     * Returns the resolved songs of a playlist or project. Paths without a
+     * song in the library are skipped.
+     */
+    List<SongData> songsOf(Object group, SongSet paths) {
+        ArrayList<SongData> songs = songsByGroup.get(group);
+        if (songs == null) {
+            songs = new ArrayList<>(paths != null ? paths.size() : 0);
+            pathsByGroup.put(group, new SongSet(paths != null ? paths.size() : 0));
+            if (paths != null) {
+                for (SongPath path : paths) {
+                    reference(path, group);
+                    SongData song = songsByPath.get(path);
+                    if (song != null) {
+                        songs.add(song);
+                    }
+                }
+            }
+            songsByGroup.put(group, songs);
+        }
+        return songs;
+    }
+
+    /**
+     * A song entered the library; groups that already referenced its path
+     * get it at the place of the path.
+     */
+    void songAdded(SongData song) {
+        List<Object> groups = groupsByPath.get(song.getPath());
+        if (groups == null) {
+            return;
+        }
+        for (Object group : groups) {
+            ArrayList<SongData> songs = songsByGroup.get(group);
+            int index = indexOf(group, songs, song.getPath());
+            if (index < 0) {
+                songs.add(-index - 1, song);
+            }
+        }
+    }
+
+    /** A song left the library; groups keep referencing its path. */
+    void songRemoved(SongData song) {
+        List<Object> groups = groupsByPath.get(song.getPath());
+        if (groups == null) {
+            return;
+        }
+        for (Object group : groups) {
+            ArrayList<SongData> songs = songsByGroup.get(group);
+            int index = indexOf(group, songs, song.getPath());
+            if (index >= 0) {
+                songs.remove(index);
+            }
+        }
+    }
+
+    void memberAdded(Object group, SongData song) {
+        ArrayList<SongData> songs = songsByGroup.get(group);
+        if (songs != null && reference(song.getPath(), group)) {
+            songs.add(song);
+        }
+    }
+
+    void memberRemoved(Object group, SongData song) {
+        ArrayList<SongData> songs = songsByGroup.get(group);
+        if (songs != null) {
+            songs.remove(song);
+            pathsByGroup.get(group).remove(song.getPath());
+            unreference(song.getPath(), group);
+        }
+    }
+
+    void groupRemoved(Object group) {
+        songsByGroup.remove(group);
+        SongSet paths = pathsByGroup.remove(group);
+        if (paths == null) {
+            return;
+        }
+        for (SongPath path : paths) {
+            unreference(path, group);
+        }
+    }
+
+    void clear() {
+        songsByGroup.clear();
+        groupsByPath.clear();
+        pathsByGroup.clear();
+    }
+
+    /** @return whether {@code group} did not reference {@code path} yet */
+    private boolean reference(SongPath path, Object group) {
+        if (!pathsByGroup.get(group).add(path)) {
+            return false;
+        }
+        groupsByPath.computeIfAbsent(path, k -> new ArrayList<>(1)).add(group);
+        return true;
+    }
+
+    private void unreference(SongPath path, Object group) {
+        List<Object> groups = groupsByPath.get(path);
+        if (groups != null) {
+            groups.removeIf(g -> g == group);
+            if (groups.isEmpty()) {
+                groupsByPath.remove(path);
+            }
+        }
+    }
+
+    /**
+     * Binary search of the song at {@code path} in a group's song list, which
+     * is in the order of the group's paths.
+     *
+     * @return its index, or (-(insertion point) - 1) if it is not listed
+     */
+    private int indexOf(Object group, ArrayList<SongData> songs, SongPath path) {
+        SongSet paths = pathsByGroup.get(group);
+        int position = paths.position(path);
+        int low = 0;
+        int high = songs.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midPosition = paths.position(songs.get(mid).getPath());
+            if (midPosition < position) {
+                low = mid + 1;
+            } else if (midPosition > position) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+}
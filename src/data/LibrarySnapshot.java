@@ -0,0 +1,719 @@
+package data;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Compact binary snapshot of the library (data/library.bin).
+ *
+ * Layout: the magic bytes {@code ASLB}, a format version, a string table
+ * holding every distinct string (paths, titles, names) once, and the
+ * entities. All integers are unsigned LEB128 varints; strings are written as
+ * their index in the table + 1 (0 for null), references as the entity id (0
+ * for none). Entities are read in dependency order (projects, playlists,
+ * songs, versioned songs), so references are resolved while reading and no
+ * fix-up pass is needed.
+ *
+ * The rarely used fields of a song (subtitle, note, change history) are kept
+ * out of the string table in a details section at the end; each song stores
+ * the offset and length of its record there. When the snapshot is read from
+ * a file, songs leave their details on disk until first accessed (see
+ * {@link SongDetailsSource}).
+ */
+public class LibrarySnapshot {
+    private static final byte[] MAGIC = { 'A', 'S', 'L', 'B' };
+    public static final int VERSION = 3;
+
+    private LibrarySnapshot() {
+    }
+
+    /* ---------------------------- writing ---------------------------- */
+
+    /**
+     * An encoded snapshot, plus the new details locations of the songs whose
+     * details were not loaded.
+     */
+    public static class Written {
+        public final byte[] bytes;
+        private final List<SongData> lazySongs = new ArrayList<>();
+        private final List<int[]> lazyRecords = new ArrayList<>(); // offset, length
+        private final HashMap<SongDetailsSource, byte[]> oldSections = new HashMap<>();
+        private int detailsLength;
+
+        Written(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        /**
+         * Points the songs that still have their details on disk to
+         * {@code file}, once {@link #bytes} has been written there. Call while
+         * holding {@link SongDetailsSource#LOCK}.
+         */
+        void bind(File file) {
+            SongDetailsSource source = new SongDetailsSource(file);
+            source.base = bytes.length - detailsLength;
+            source.length = detailsLength;
+            for (int i = 0; i < lazySongs.size(); i++) {
+                SongData song = lazySongs.get(i);
+                if (song.detailsSource != null) {
+                    song.detailsOffset = lazyRecords.get(i)[0];
+                    song.detailsLength = lazyRecords.get(i)[1];
+                    song.detailsSource = source;
+                }
+            }
+            // copies taken before may still point to the replaced file
+            for (Map.Entry<SongDetailsSource, byte[]> old : oldSections.entrySet()) {
+                old.getKey().retire(old.getValue());
+            }
+        }
+    }
+
+    /**
+     * A library copied on the thread that changes it, to be encoded by
+     * {@link #write(Copy)} on another one. Entities are copied field by field
+     * along with their lists and song sets, and share the strings; entities
+     * referred to (owners, children, versions) are only read for their ids,
+     * which never change. Copying takes a few milliseconds where encoding
+     * takes a few hundred.
+     */
+    public static class Copy {
+        private String guiStyle;
+        private long nextId;
+        private List<String> trackedFolders;
+        private List<AssignmentRule> rules;
+        private final List<ProjectArtistData> projects = new ArrayList<>();
+        private final List<PlaylistData> playlists = new ArrayList<>();
+        private final List<SongData> songs = new ArrayList<>();
+        private final List<SongData> originals = new ArrayList<>(); // of songs, to bind their details
+        private final List<VersionedSongData> versioned = new ArrayList<>();
+
+        private Copy() {
+        }
+    }
+
+    /**
+     * Copies the library for {@link #write(Copy)}. Call on the thread that
+     * changes the library, the event dispatch thread.
+     */
+    public static Copy copy(GlobalData data) {
+        Copy copy = new Copy();
+        copy.guiStyle = data.guiStyle;
+        copy.nextId = data.nextId;
+        copy.trackedFolders = data.trackedFolders != null ? new ArrayList<>(data.trackedFolders) : null;
+        copy.rules = data.assignmentRules != null ? new ArrayList<>(data.assignmentRules) : List.of();
+
+        for (ProjectArtistData pa : data.projectsArtists != null ? data.projectsArtists : List.<ProjectArtistData>of()) {
+            ProjectArtistData c = new ProjectArtistData();
+            c.id = pa.id;
+            c.name = pa.name;
+            c.projectType = pa.projectType;
+            c.created = pa.created != null ? new Date(pa.created.getTime()) : null;
+            c.note = copy(pa.note);
+            c.description = pa.description;
+            c.imagePath = pa.imagePath;
+            c.songsPaths = pa.songsPaths != null ? pa.songsPaths.copy() : null;
+            c.owner = pa.owner;
+            c.children = pa.children != null ? new ArrayList<>(pa.children) : null;
+            copy.projects.add(c);
+        }
+
+        for (PlaylistData playlist : data.playlists != null ? data.playlists : List.<PlaylistData>of()) {
+            PlaylistData c = new PlaylistData();
+            c.id = playlist.id;
+            c.title = playlist.title;
+            c.note = copy(playlist.note);
+            c.songPaths = playlist.songPaths != null ? playlist.songPaths.copy() : null;
+            copy.playlists.add(c);
+        }
+
+        if (data.allSongs != null) {
+            // details are loaded and their locations rebound under the lock
+            synchronized (SongDetailsSource.LOCK) {
+                for (SongData song : data.allSongs.values()) {
+                    SongData c = new SongData();
+                    c.id = song.id;
+                    c.filePath = song.filePath;
+                    c.title = song.title;
+                    c.guessedArtist = song.guessedArtist;
+                    c.version = song.version;
+                    c.owners = song.owners != null ? new ArrayList<>(song.owners) : null;
+                    c.detailsSource = song.detailsSource;
+                    if (c.detailsSource != null) {
+                        c.detailsOffset = song.detailsOffset;
+                        c.detailsLength = song.detailsLength;
+                    } else {
+                        c.subtitle = song.subtitle;
+                        c.note = copy(song.note);
+                        c.changeHistory = song.changeHistory != null ? new ArrayList<>(song.changeHistory) : null;
+                    }
+                    copy.songs.add(c);
+                    copy.originals.add(song);
+                }
+            }
+        }
+
+        for (VersionedSongData vsd : data.songs != null ? data.songs : List.<VersionedSongData>of()) {
+            VersionedSongData c = new VersionedSongData();
+            c.id = vsd.id;
+            c.versions = vsd.versions != null ? new ArrayList<>(vsd.versions) : null;
+            c.starred = vsd.starred;
+            copy.versioned.add(c);
+        }
+        return copy;
+    }
+
+    private static Note copy(Note note) {
+        if (note == null) {
+            return null;
+        }
+        Note c = new Note();
+        c.title = note.title;
+        c.content = note.content;
+        return c;
+    }
+
+    /** Copies and encodes a library on the calling thread. */
+    public static Written write(GlobalData data) throws IOException {
+        return write(copy(data));
+    }
+
+    /**
+     * Encodes a library copy. Details still on disk are copied over from the
+     * snapshot they were read from.
+     */
+    public static Written write(Copy data) throws IOException {
+        Encoder body = new Encoder();
+        Encoder details = new Encoder();
+        List<SongData> lazySongs = new ArrayList<>();
+        List<int[]> lazyRecords = new ArrayList<>();
+        HashMap<SongDetailsSource, byte[]> oldSections = new HashMap<>();
+        body.string(data.guiStyle);
+        body.varint(data.nextId);
+        body.strings(data.trackedFolders);
+        body.varint(data.rules.size());
+        for (AssignmentRule rule : data.rules) {
+            body.varint(rule.kind.ordinal());
+            body.string(rule.match);
+            body.string(rule.project);
+        }
+
+        body.varint(data.projects.size());
+        for (ProjectArtistData pa : data.projects) {
+            body.varint(pa.id);
+            body.string(pa.name);
+            body.varint(pa.projectType != null ? pa.projectType.ordinal() + 1 : 0);
+            body.date(pa.created);
+            body.note(pa.note);
+            body.string(pa.description);
+            body.string(pa.imagePath);
+            body.paths(pa.songsPaths);
+            body.varint(pa.owner != null ? pa.owner.id : 0);
+            List<ProjectArtistData> children = pa.children != null ? pa.children : List.of();
+            body.varint(children.size());
+            for (ProjectArtistData child : children) {
+                body.varint(child.id);
+            }
+        }
+
+        body.varint(data.playlists.size());
+        for (PlaylistData playlist : data.playlists) {
+            body.varint(playlist.id);
+            body.string(playlist.title);
+            body.note(playlist.note);
+            body.paths(playlist.songPaths);
+        }
+
+        body.varint(data.songs.size());
+        for (int i = 0; i < data.songs.size(); i++) {
+            SongData song = data.songs.get(i);
+            body.varint(song.id);
+            body.path(song.filePath);
+            body.string(song.title);
+            body.string(song.guessedArtist);
+            body.varint(song.version);
+            List<ProjectArtistData> owners = song.owners != null ? song.owners : List.of();
+            body.varint(owners.size());
+            for (ProjectArtistData owner : owners) {
+                body.varint(owner.id);
+            }
+
+            int offset = details.bytes.size();
+            SongDetailsSource source = song.detailsSource;
+            if (source != null) {
+                // still on disk: copy the record over without decoding it
+                byte[] section = oldSections.get(source);
+                if (section == null) {
+                    synchronized (SongDetailsSource.LOCK) {
+                        section = source.readAll();
+                    }
+                    oldSections.put(source, section);
+                }
+                details.bytes.write(section, song.detailsOffset, song.detailsLength);
+                lazySongs.add(data.originals.get(i));
+                lazyRecords.add(new int[] { offset, song.detailsLength });
+            } else if (song.subtitle != null || song.note != null
+                    || (song.changeHistory != null && !song.changeHistory.isEmpty())) {
+                details.inlineString(song.subtitle);
+                details.inlineNote(song.note);
+                List<Date> history = song.changeHistory != null ? song.changeHistory : List.of();
+                details.varint(history.size());
+                for (Date date : history) {
+                    details.date(date);
+                }
+            }
+            int length = details.bytes.size() - offset;
+            body.varint(length > 0 ? offset + 1 : 0);
+            body.varint(length);
+        }
+
+        body.varint(data.versioned.size());
+        for (VersionedSongData vsd : data.versioned) {
+            body.varint(vsd.id);
+            List<SongData> versions = vsd.versions != null ? vsd.versions : List.of();
+            body.varint(versions.size());
+            for (SongData version : versions) {
+                body.varint(version.id);
+            }
+            body.varint(vsd.starred != null ? vsd.starred.id : 0);
+        }
+        body.varint(details.bytes.size());
+        body.bytes.write(details.bytes.toByteArray(), 0, details.bytes.size());
+
+        Encoder out = new Encoder();
+        out.bytes.write(MAGIC, 0, MAGIC.length);
+        out.varint(VERSION);
+        out.varint(body.table.size());
+        for (String s : body.table.keySet()) {
+            byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+            out.varint(utf8.length);
+            out.bytes.write(utf8, 0, utf8.length);
+        }
+        out.bytes.write(body.bytes.toByteArray(), 0, body.bytes.size());
+
+        Written written = new Written(out.bytes.toByteArray());
+        written.lazySongs.addAll(lazySongs);
+        written.lazyRecords.addAll(lazyRecords);
+        written.oldSections.putAll(oldSections);
+        written.detailsLength = details.bytes.size();
+        return written;
+    }
+
+    private static class Encoder {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(1 << 16);
+        // string -> index, in order of first use
+        final LinkedHashMap<String, Integer> table = new LinkedHashMap<>();
+
+        void varint(long v) {
+            while ((v & ~0x7FL) != 0) {
+                bytes.write((int) ((v & 0x7F) | 0x80));
+                v >>>= 7;
+            }
+            bytes.write((int) v);
+        }
+
+        void string(String s) {
+            if (s == null) {
+                varint(0);
+                return;
+            }
+            Integer index = table.get(s);
+            if (index == null) {
+                index = table.size();
+                table.put(s, index);
+            }
+            varint(index + 1);
+        }
+
+        void strings(List<String> list) {
+            if (list == null) {
+                varint(0);
+                return;
+            }
+            // count + 1 so that null and empty lists stay distinct
+            varint(list.size() + 1);
+            for (String s : list) {
+                string(s);
+            }
+        }
+
+        void path(SongPath path) {
+            string(path != null ? path.toString() : null);
+        }
+
+        void paths(SongSet list) {
+            if (list == null) {
+                varint(0);
+                return;
+            }
+            varint(list.size() + 1);
+            for (SongPath path : list) {
+                path(path);
+            }
+        }
+
+        void date(Date date) {
+            varint(date != null ? date.getTime() + 1 : 0);
+        }
+
+        void note(Note note) {
+            if (note == null) {
+                varint(0);
+                return;
+            }
+            varint(1);
+            string(note.title);
+            string(note.content);
+        }
+
+        /** Writes a string in place rather than through the string table. */
+        void inlineString(String s) {
+            if (s == null) {
+                varint(0);
+                return;
+            }
+            byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+            varint(utf8.length + 1);
+            bytes.write(utf8, 0, utf8.length);
+        }
+
+        void inlineNote(Note note) {
+            if (note == null) {
+                varint(0);
+                return;
+            }
+            varint(1);
+            inlineString(note.title);
+            inlineString(note.content);
+        }
+    }
+
+    /* ---------------------------- reading ---------------------------- */
+
+    /**
+     * @return the checksum that identifies a snapshot in the journal
+     */
+    static long checksum(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return crc.getValue();
+    }
+
+    /**
+     * Reads a snapshot with all song details loaded.
+     */
+    public static GlobalData read(byte[] bytes) throws IOException {
+        return read(bytes, null);
+    }
+
+    /**
+     * Reads a snapshot. If {@code file} (where {@code bytes} came from) is
+     * given, song details stay on disk until they are first accessed.
+     */
+    public static GlobalData read(byte[] bytes, File file) throws IOException {
+        Decoder in = new Decoder(bytes);
+        for (byte b : MAGIC) {
+            if (in.pos >= bytes.length || bytes[in.pos++] != b) {
+                throw new IOException("Not a library snapshot");
+            }
+        }
+        int formatVersion = (int) in.varint();
+        if (formatVersion < 1 || formatVersion > VERSION) {
+            throw new IOException("Unsupported library snapshot version " + formatVersion);
+        }
+        int count = (int) in.varint();
+        in.table = new String[count];
+        for (int i = 0; i < count; i++) {
+            int length = (int) in.varint();
+            in.table[i] = new String(bytes, in.pos, length, StandardCharsets.UTF_8);
+            in.pos += length;
+        }
+
+        GlobalData data = new GlobalData();
+        data.guiStyle = in.string();
+        data.nextId = in.varint();
+        data.trackedFolders = in.strings();
+        if (formatVersion >= 3) {
+            int ruleCount = (int) in.varint();
+            if (ruleCount > 0) {
+                data.assignmentRules = new ArrayList<>(ruleCount);
+                for (int i = 0; i < ruleCount; i++) {
+                    AssignmentRule rule = new AssignmentRule();
+                    rule.kind = AssignmentRule.Kind.values()[(int) in.varint()];
+                    rule.match = in.string();
+                    rule.project = in.string();
+                    data.assignmentRules.add(rule);
+                }
+            }
+        }
+
+        int projectCount = (int) in.varint();
+        data.projectsArtists = new ArrayList<>(projectCount);
+        HashMap<Long, ProjectArtistData> projectsById = new HashMap<>(projectCount * 2);
+        long[][] projectLinks = new long[projectCount][]; // owner id, child ids...
+        for (int i = 0; i < projectCount; i++) {
+            ProjectArtistData pa = new ProjectArtistData();
+            pa.id = in.varint();
+            pa.name = in.string();
+            int type = (int) in.varint();
+            pa.projectType = type > 0 ? ProjectArtistData.ProjectType.values()[type - 1] : null;
+            pa.created = in.date();
+            pa.note = in.note();
+            pa.description = in.string();
+            pa.imagePath = in.string();
+            pa.songsPaths = in.paths();
+            long ownerId = in.varint();
+            int childCount = (int) in.varint();
+            long[] links = new long[childCount + 1];
+            links[0] = ownerId;
+            for (int c = 0; c < childCount; c++) {
+                links[c + 1] = in.varint();
+            }
+            projectLinks[i] = links;
+            data.projectsArtists.add(pa);
+            projectsById.put(pa.id, pa);
+        }
+        // owners and children may refer to projects stored after them
+        for (int i = 0; i < projectCount; i++) {
+            ProjectArtistData pa = data.projectsArtists.get(i);
+            long[] links = projectLinks[i];
+            pa.owner = projectsById.get(links[0]);
+            if (links.length > 1) {
+                pa.children = new ArrayList<>(links.length - 1);
+                for (int c = 1; c < links.length; c++) {
+                    ProjectArtistData child = projectsById.get(links[c]);
+                    if (child != null) {
+                        pa.children.add(child);
+                    }
+                }
+            }
+        }
+
+        int playlistCount = (int) in.varint();
+        data.playlists = new ArrayList<>(playlistCount);
+        for (int i = 0; i < playlistCount; i++) {
+            PlaylistData playlist = new PlaylistData();
+            playlist.id = in.varint();
+            playlist.title = in.string();
+            playlist.note = in.note();
+            playlist.songPaths = in.paths();
+            data.playlists.add(playlist);
+        }
+
+        // bound to the details section once its position is known
+        SongDetailsSource details = new SongDetailsSource(file);
+        int songCount = (int) in.varint();
+        data.allSongs = new HashMap<>(songCount * 4 / 3 + 1);
+        HashMap<Long, SongData> songsById = new HashMap<>(songCount * 4 / 3 + 1);
+        for (int i = 0; i < songCount; i++) {
+            SongData song = new SongData();
+            song.id = in.varint();
+            song.filePath = in.path();
+            song.title = in.string();
+            song.guessedArtist = in.string();
+            if (formatVersion == 1) {
+                song.subtitle = in.string();
+            }
+            song.version = (int) in.varint();
+            if (formatVersion == 1) {
+                song.note = in.note();
+            }
+            int ownerCount = (int) in.varint();
+            if (ownerCount > 0) {
+                song.owners = new ArrayList<>(ownerCount);
+                for (int o = 0; o < ownerCount; o++) {
+                    ProjectArtistData owner = projectsById.get(in.varint());
+                    if (owner != null) {
+                        song.owners.add(owner);
+                    }
+                }
+            }
+            if (formatVersion == 1) {
+                int historyCount = (int) in.varint();
+                if (historyCount > 0) {
+                    song.changeHistory = new ArrayList<>(historyCount);
+                    for (int h = 0; h < historyCount; h++) {
+                        song.changeHistory.add(in.date());
+                    }
+                }
+            } else {
+                int offset = (int) in.varint();
+                int length = (int) in.varint();
+                if (offset > 0) {
+                    song.detailsSource = details;
+                    song.detailsOffset = offset - 1;
+                    song.detailsLength = length;
+                }
+            }
+            data.allSongs.put(song.filePath, song);
+            songsById.put(song.id, song);
+        }
+
+        int versionedCount = (int) in.varint();
+        data.songs = new ArrayList<>(versionedCount);
+        for (int i = 0; i < versionedCount; i++) {
+            VersionedSongData vsd = new VersionedSongData();
+            vsd.id = in.varint();
+            int versionCount = (int) in.varint();
+            vsd.versions = new ArrayList<>(versionCount);
+            for (int v = 0; v < versionCount; v++) {
+                SongData version = songsById.get(in.varint());
+                if (version != null) {
+                    vsd.versions.add(version);
+                    version.parent = vsd;
+                }
+            }
+            vsd.starred = songsById.get(in.varint());
+            vsd.isEmpty = vsd.versions.isEmpty();
+            data.songs.add(vsd);
+        }
+
+        if (formatVersion >= 2) {
+            details.length = (int) in.varint();
+            details.base = in.pos;
+            if (file == null) {
+                // nothing to page in from; decode all details now
+                for (SongData song : data.allSongs.values()) {
+                    if (song.detailsSource != null) {
+                        readDetails(song, Arrays.copyOfRange(bytes, in.pos + song.detailsOffset,
+                                in.pos + song.detailsOffset + song.detailsLength));
+                        song.detailsSource = null;
+                    }
+                }
+            }
+        }
+        return data;
+    }
+
+    /**
+     * Sets subtitle, note and change history of {@code song} from its record
+     * in the details section.
+     */
+    static void readDetails(SongData song, byte[] record) throws IOException {
+        Decoder in = new Decoder(record);
+        song.subtitle = in.inlineString();
+        song.note = in.inlineNote();
+        int historyCount = (int) in.varint();
+        if (historyCount > 0) {
+            song.changeHistory = new ArrayList<>(historyCount);
+            for (int h = 0; h < historyCount; h++) {
+                song.changeHistory.add(in.date());
+            }
+        }
+    }
+
+    private static class Decoder {
+        final byte[] bytes;
+        int pos;
+        String[] table;
+        SongPath[] pathTable; // table entries interned as paths, on first use
+
+        Decoder(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        long varint() throws IOException {
+            long result = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                if (pos >= bytes.length) {
+                    throw new IOException("Truncated library snapshot");
+                }
+                byte b = bytes[pos++];
+                result |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return result;
+                }
+            }
+            throw new IOException("Malformed varint in library snapshot");
+        }
+
+        String string() throws IOException {
+            int index = (int) varint();
+            return index == 0 ? null : table[index - 1];
+        }
+
+        ArrayList<String> strings() throws IOException {
+            int count = (int) varint();
+            if (count == 0) {
+                return null;
+            }
+            ArrayList<String> list = new ArrayList<>(count - 1);
+            for (int i = 1; i < count; i++) {
+                list.add(string());
+            }
+            return list;
+        }
+
+        SongPath path() throws IOException {
+            int index = (int) varint();
+            if (index == 0) {
+                return null;
+            }
+            if (pathTable == null) {
+                pathTable = new SongPath[table.length];
+            }
+            SongPath path = pathTable[index - 1];
+            if (path == null) {
+                path = SongPath.of(table[index - 1]);
+                pathTable[index - 1] = path;
+            }
+            return path;
+        }
+
+        SongSet paths() throws IOException {
+            int count = (int) varint();
+            if (count == 0) {
+                return null;
+            }
+            SongSet list = new SongSet(count - 1);
+            for (int i = 1; i < count; i++) {
+                list.add(path());
+            }
+            return list;
+        }
+
+        Date date() throws IOException {
+            long v = varint();
+            return v == 0 ? null : new Date(v - 1);
+        }
+
+        Note note() throws IOException {
+            if (varint() == 0) {
+                return null;
+            }
+            Note note = new Note();
+            note.title = string();
+            note.content = string();
+            return note;
+        }
+
+        String inlineString() throws IOException {
+            int length = (int) varint();
+            if (length == 0) {
+                return null;
+            }
+            String s = new String(bytes, pos, length - 1, StandardCharsets.UTF_8);
+            pos += length - 1;
+            return s;
+        }
+
+        Note inlineNote() throws IOException {
+            if (varint() == 0) {
+                return null;
+            }
+            Note note = new Note();
+            note.title = inlineString();
+            note.content = inlineString();
+            return note;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package data;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+/**
+ * Persistent cache of {@link AudioMetadata} by file path, stored in
+ * data/metadataCache.json.
+ *
+ * Cached entries are served without touching the file, so a cold start does
+ * no per-song I/O. After loading, a background pass compares every entry with
+ * the size and modification time of its file and re-reads only the files that
+ * changed.
+ */
+public class MetadataCache {
+    // Writes of the cache file within this window are coalesced
+    private static final long SAVE_DELAY_MS = 2000;
+
+    private static MetadataCache instance;
+
+    private final Map<String, AudioMetadata> entries = new ConcurrentHashMap<>();
+    private final File file;
+    private final SaveScheduler saveScheduler;
+    private final Gson gson = new Gson();
+
+    private MetadataCache(File file, SaveScheduler saveScheduler) {
+        this.file = file;
+        this.saveScheduler = saveScheduler;
+    }
+
+    /**
+     * Loads the cache from {@code file} and starts revalidating it. Called once
+     * by the {@link FileManager}.
+     */
+    static synchronized MetadataCache init(File file, SaveScheduler saveScheduler) {
+        instance = new MetadataCache(file, saveScheduler);
+        instance.load();
+        Thread revalidate = new Thread(instance::revalidate, "MetadataRevalidate");
+        revalidate.setDaemon(true);
+        revalidate.setPriority(Thread.MIN_PRIORITY);
+        revalidate.start();
+        return instance;
+    }
+
+    /**
+     * @return the application's cache; an in-memory one if no
+     *         {@link FileManager} has been created
+     */
+    public static synchronized MetadataCache get() {
+        if (instance == null) {
+            instance = new MetadataCache(null, null);
+        }
+        return instance;
+    }
+
+    /**
+     * Returns the cached entry for {@code path} without touching the file, or
+     * null if there is none.
+     */
+    public AudioMetadata peek(String path) {
+        return entries.get(path);
+    }
+
+    /**
+     * Returns the metadata of {@code file}, reading the file only if it is not
+     * cached or has changed since it was cached.
+     */
+    public AudioMetadata get(File file) {
+        String path = file.getPath();
+        AudioMetadata cached = entries.get(path);
+        if (cached != null && cached.matches(file)) {
+            return cached;
+        }
+        AudioMetadata fresh = AudioMetadata.read(file);
+        entries.put(path, fresh);
+        scheduleSave();
+        return fresh;
+    }
+
+    public void remove(String path) {
+        if (entries.remove(path) != null) {
+            scheduleSave();
+        }
+    }
+
+    private void load() {
+        if (file == null || !file.exists()) {
+            return;
+        }
+        Type type = new TypeToken<HashMap<String, AudioMetadata>>() {
+        }.getType();
+        try (InputStreamReader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            Map<String, AudioMetadata> loaded = gson.fromJson(reader, type);
+            if (loaded != null) {
+                entries.putAll(loaded);
+            }
+        } catch (Exception e) {
+            // the cache is only an optimization; start over if it is unreadable
+            System.err.println("Could not read metadata cache: " + e.getMessage());
+        }
+    }
+
+    private void revalidate() {
+        int changed = 0;
+        for (Map.Entry<String, AudioMetadata> entry : entries.entrySet()) {
+            File f = new File(entry.getKey());
+            if (!f.exists()) {
+                entries.remove(entry.getKey());
+                changed++;
+            } else if (!entry.getValue().matches(f)) {
+                entries.put(entry.getKey(), AudioMetadata.read(f));
+                changed++;
+            }
+        }
+        if (changed > 0) {
+            System.out.println("Metadata cache: " + changed + " entries refreshed.");
+            scheduleSave();
+        }
+    }
+
+    private void scheduleSave() {
+        if (saveScheduler != null) {
+            saveScheduler.schedule("metadata", this::save, SAVE_DELAY_MS);
+        }
+    }
+
+    private void save() {
+        String json = gson.toJson(new HashMap<>(entries));
+        FileManager.writeAtomically(file, json);
+    }
+}
@@ -0,0 +1,183 @@
+package data;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.gson.Gson;
+
+/**
+ * Append-only write-ahead journal of library mutations.
+ *
+ * Each {@link JournalRecord} is written as one line of compact JSON. On load
+ * the records are replayed on top of the last snapshot; writing a new
+ * snapshot truncates the journal.
+ *
+ * The journal starts with a marker naming the snapshot it follows, by
+ * checksum, and a new snapshot is marked before it replaces the old one. A
+ * journal is only replayed onto the snapshot it was written after, so a crash
+ * between writing the snapshot and truncating the journal, or a snapshot that
+ * could not be read, never replays records onto the wrong library.
+ */
+public class MutationJournal {
+    private final File file;
+    private final Gson gson = new Gson();
+    private BufferedWriter writer;
+    private int recordCount = 0;
+    private long snapshot; // checksum of the snapshot the journal follows
+
+    public MutationJournal(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Appends records and flushes them to the file.
+     */
+    public synchronized void append(List<JournalRecord> records) throws IOException {
+        write(records);
+        recordCount += records.size();
+    }
+
+    private void write(List<JournalRecord> records) throws IOException {
+        if (writer == null) {
+            boolean empty = file.length() == 0;
+            writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true),
+                    StandardCharsets.UTF_8));
+            if (empty) {
+                writer.write(gson.toJson(JournalRecord.snapshot(snapshot, 0)));
+                writer.newLine();
+            }
+        }
+        for (JournalRecord record : records) {
+            writer.write(gson.toJson(record));
+            writer.newLine();
+        }
+        writer.flush();
+    }
+
+    /**
+     * Replays the records journaled after the snapshot with checksum
+     * {@code snapshot} onto {@code data}, which was loaded from it; 0 if the
+     * library did not come from a snapshot. A journal written after another
+     * snapshot is moved aside instead, and new records start a new journal.
+     *
+     * @return number of records replayed
+     */
+    public synchronized int replay(GlobalData data, long snapshot) {
+        this.snapshot = snapshot;
+        if (!file.exists()) {
+            return 0;
+        }
+        List<JournalRecord> records = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                JournalRecord record;
+                try {
+                    record = gson.fromJson(line, JournalRecord.class);
+                } catch (Exception e) {
+                    // a torn last line after a crash; everything before it is valid
+                    System.err.println("Skipping unreadable journal record: " + e.getMessage());
+                    break;
+                }
+                if (record != null && record.getOp() != null) {
+                    records.add(record);
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        // replay from the last mark of this snapshot, including the records
+        // made while it was written
+        int from = -1;
+        for (int i = 0; i < records.size(); i++) {
+            JournalRecord record = records.get(i);
+            if (record.getOp() == JournalRecord.Op.SNAPSHOT && record.snapshot == snapshot) {
+                from = i;
+                for (int kept = record.kept; kept > 0 && from > 0;) {
+                    if (records.get(--from).getOp() != JournalRecord.Op.SNAPSHOT) {
+                        kept--;
+                    }
+                }
+            }
+        }
+        if (from < 0) {
+            if (records.stream().anyMatch(r -> r.getOp() != JournalRecord.Op.SNAPSHOT)) {
+                setAside();
+            }
+            recordCount = 0;
+            return 0;
+        }
+        int replayed = 0;
+        for (JournalRecord record : records.subList(from, records.size())) {
+            if (record.getOp() != JournalRecord.Op.SNAPSHOT) {
+                record.applyTo(data);
+                replayed++;
+            }
+        }
+        recordCount = replayed;
+        return replayed;
+    }
+
+    private void setAside() {
+        File aside = new File(file.getPath() + "." + System.currentTimeMillis() + ".unmatched");
+        System.err.println("The journal does not belong to the loaded library and is not replayed. "
+                + "Its changes are kept in " + aside);
+        if (!file.renameTo(aside)) {
+            System.err.println("Could not move " + file + " aside, its changes are lost.");
+            file.delete();
+        }
+    }
+
+    /**
+     * Records that a snapshot with checksum {@code snapshot} is about to
+     * replace the current one. It contains every record journaled so far
+     * except the last {@code kept}.
+     */
+    public synchronized void mark(long snapshot, int kept) throws IOException {
+        write(List.of(JournalRecord.snapshot(snapshot, kept)));
+    }
+
+    /**
+     * Empties the journal once its records are contained in the snapshot
+     * last {@link #mark marked}, keeping {@code newer}, the records made after
+     * the snapshot was taken. The new journal replaces the old one in one
+     * rename.
+     */
+    public synchronized void truncate(long snapshot, List<JournalRecord> newer) throws IOException {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+        this.snapshot = snapshot;
+        StringBuilder lines = new StringBuilder();
+        lines.append(gson.toJson(JournalRecord.snapshot(snapshot, 0))).append(System.lineSeparator());
+        for (JournalRecord record : newer) {
+            lines.append(gson.toJson(record)).append(System.lineSeparator());
+        }
+        if (!FileManager.writeAtomically(file, lines.toString())) {
+            throw new IOException("Could not rewrite " + file);
+        }
+        recordCount = newer.size();
+    }
+
+    /**
+     * @return records written since the last snapshot
+     */
+    public synchronized int getRecordCount() {
+        return recordCount;
+    }
+}
@@ -1,17 +1,19 @@
 package data;
 
-import java.util.ArrayList;
-
-
 public class PlaylistData extends Data {
+    long id; // stable id, assigned by GlobalData
     String title;
-    ArrayList<String> songPaths; //TODO: save only a reference to the song, currentyl serialiting creates a vicious loop
+    SongSet songPaths;
     Note note; 
     
 
     public PlaylistData() {
     }
 
+    public long getId() {
+        return id;
+    }
+
     public Note getNote() {
         return note;
     }
@@ -20,7 +22,7 @@ public class PlaylistData extends Data {
         return title;
     }
 
-    public ArrayList<String> getSongPaths() {
+    public SongSet getSongPaths() {
         return songPaths;
     }
  
@@ -35,14 +37,14 @@ public class PlaylistData extends Data {
 
     public void addSong(SongData newSong) {
         if (songPaths == null) {
-            songPaths = new ArrayList<>();
+            songPaths = new SongSet();
         }
-        songPaths.add(newSong.getFilePath());
+        songPaths.add(newSong.getPath());
     }
 
     public void removeSong(SongData songToRemove) {
         if (songPaths != null) {
-            songPaths.remove(songToRemove.getFilePath());
+            songPaths.remove(songToRemove.getPath());
         }
     }
 
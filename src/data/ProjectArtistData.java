@@ -11,29 +11,34 @@ public class ProjectArtistData extends Data {
         LABEL
     }
 
+    long id; // stable id, assigned by GlobalData
     ProjectType projectType;
     String name; // Worldroom
     Date created;
     Note note;
     String description;
     String imagePath;
-    ArrayList<String> songsPaths;
+    SongSet songsPaths;
     ProjectArtistData owner;
     ArrayList<ProjectArtistData> children;
     
-    public ArrayList<String> getSongPaths() {
+    public long getId() {
+        return id;
+    }
+
+    public SongSet getSongPaths() {
         return songsPaths;
     }
 
-    public void setSongPaths(ArrayList<String> songsPaths) {
+    public void setSongPaths(SongSet songsPaths) {
         this.songsPaths = songsPaths;
     }
 
     public void addSong(SongData newSong) {
         if (songsPaths == null) {
-            songsPaths = new ArrayList<>();
+            songsPaths = new SongSet();
         }
-        songsPaths.add(newSong.getFilePath());
+        songsPaths.add(newSong.getPath());
     }
 
     public ProjectType getProjectType() {
@@ -115,7 +120,7 @@ public class ProjectArtistData extends Data {
 
     public void removeSong(SongData song) {
         if (songsPaths != null) {
-            songsPaths.remove(song.getFilePath());
+            songsPaths.remove(song.getPath());
         }
     }
 }
@@ -0,0 +1,98 @@
+package data;
+
+import java.io.IOException;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Writes each library entity ({@link SongData}, {@link VersionedSongData},
+ * {@link ProjectArtistData}, {@link PlaylistData}) in full only where it is
+ * stored, and as its id wherever another entity refers to it. Without this
+ * Gson copies a project, with all its song paths, into every song it owns.
+ *
+ * References are read back as stubs that only carry the id;
+ * {@link GlobalData#afterLoad()} swaps them for the stored entities. Full
+ * copies found in snapshots written before this format are read as before.
+ */
+class ReferenceTypeAdapterFactory implements TypeAdapterFactory {
+    // nesting depth of entities being written on this thread
+    private static final ThreadLocal<int[]> depth = ThreadLocal.withInitial(() -> new int[1]);
+
+    @Override
+    public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+        Class<? super T> raw = type.getRawType();
+        if (raw != SongData.class && raw != VersionedSongData.class && raw != ProjectArtistData.class
+                && raw != PlaylistData.class) {
+            return null;
+        }
+        TypeAdapter<T> delegate = gson.getDelegateAdapter(this, type);
+        return new TypeAdapter<T>() {
+            @Override
+            public void write(JsonWriter out, T value) throws IOException {
+                if (value == null) {
+                    out.nullValue();
+                    return;
+                }
+                int[] d = depth.get();
+                if (d[0] > 0) {
+                    out.value(idOf(value));
+                    return;
+                }
+                if (value instanceof SongData) {
+                    ((SongData) value).hydrate(); // reflection would miss lazily loaded fields
+                }
+                d[0]++;
+                try {
+                    delegate.write(out, value);
+                } finally {
+                    d[0]--;
+                }
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public T read(JsonReader in) throws IOException {
+                if (in.peek() == JsonToken.NUMBER) {
+                    return (T) stub(raw, in.nextLong());
+                }
+                return delegate.read(in);
+            }
+        };
+    }
+
+    private static long idOf(Object entity) {
+        if (entity instanceof SongData) {
+            return ((SongData) entity).id;
+        } else if (entity instanceof VersionedSongData) {
+            return ((VersionedSongData) entity).id;
+        } else if (entity instanceof ProjectArtistData) {
+            return ((ProjectArtistData) entity).id;
+        }
+        return ((PlaylistData) entity).id;
+    }
+
+    private static Object stub(Class<?> type, long id) {
+        if (type == SongData.class) {
+            SongData song = new SongData();
+            song.id = id;
+            return song;
+        } else if (type == VersionedSongData.class) {
+            VersionedSongData vsd = new VersionedSongData();
+            vsd.id = id;
+            return vsd;
+        } else if (type == ProjectArtistData.class) {
+            ProjectArtistData pa = new ProjectArtistData();
+            pa.id = id;
+            return pa;
+        }
+        PlaylistData playlist = new PlaylistData();
+        playlist.id = id;
+        return playlist;
+    }
+}
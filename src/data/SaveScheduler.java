@@ -0,0 +1,79 @@
+package data;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs persistence work on a single background thread so the UI never waits
+ * for disk I/O.
+ *
+ * Tasks are scheduled under a key; while a task with the same key is still
+ * pending, further requests are absorbed by it. A burst of save requests (e.g.
+ * adding hundreds of songs in a loop) therefore results in a single write.
+ */
+public class SaveScheduler {
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "Persistence");
+        t.setDaemon(true);
+        return t;
+    });
+    private final Map<String, Runnable> pending = new LinkedHashMap<>();
+
+    /**
+     * Runs {@code task} after {@code delayMs} unless a task with the same key
+     * is already waiting, in which case the request is coalesced into it.
+     */
+    public synchronized void schedule(String key, Runnable task, long delayMs) {
+        if (pending.containsKey(key)) {
+            return;
+        }
+        pending.put(key, task);
+        executor.schedule(() -> run(key, task), delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void run(String key, Runnable task) {
+        synchronized (this) {
+            if (pending.get(key) != task) {
+                return; // already run by flush()
+            }
+            // requests arriving from now on need another run
+            pending.remove(key);
+        }
+        try {
+            task.run();
+        } catch (Exception e) {
+            System.err.println("Error in background save (" + key + "): " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Runs all pending tasks right away, in the order they were scheduled, and
+     * waits until they are done. Call before the application exits.
+     */
+    public void flush() {
+        Future<?> done = executor.submit(() -> {
+            List<Map.Entry<String, Runnable>> due;
+            synchronized (this) {
+                due = new ArrayList<>(pending.entrySet());
+            }
+            for (Map.Entry<String, Runnable> entry : due) {
+                run(entry.getKey(), entry.getValue());
+            }
+        });
+        try {
+            done.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,324 @@
+package data;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Full-text search over the library: an inverted index from lower-case word
+ * to the songs containing it, in a sorted map so that a query word matches
+ * every indexed word it is a prefix of. Indexed are title, guessed artist,
+ * subtitle, owner names, note and the words of the file path.
+ *
+ * The index is built on the first search and from then on kept up to date by
+ * {@link GlobalData}'s mutators; changes made through setters (a renamed
+ * project, say) are reported with {@link #update(Collection)}. Like the rest
+ * of the library it is only used from the EDT.
+ */
+public class SearchIndex {
+    private final GlobalData data;
+    private boolean built;
+    // word -> songs containing it
+    private final HashMap<String, Posting> postings = new HashMap<>();
+    // the same, sorted for prefix lookups; only changes when a word comes or goes
+    private final TreeMap<String, Posting> vocabulary = new TreeMap<>();
+
+    private static class Posting {
+        final String word; // the instance shared by all entries
+        final SongSet songs = new SongSet();
+
+        Posting(String word) {
+            this.word = word;
+        }
+    }
+    // song -> its words, to take them out again
+    private final Map<SongData, Entry> entries = new IdentityHashMap<>();
+    // words of each directory, which many songs share
+    private final Map<String, List<String>> directoryWords = new IdentityHashMap<>();
+
+    private static class Entry {
+        String[] words;
+        String[] detailWords; // from subtitle and note
+    }
+
+    SearchIndex(GlobalData data) {
+        this.data = data;
+    }
+
+    /**
+     * Returns the dense ids ({@link SongPath#id()}) of the songs matching
+     * every word of {@code query} (by prefix), or null for a blank query.
+     */
+    public BitSet search(String query) {
+        List<String> terms = new ArrayList<>();
+        tokenize(query, terms);
+        if (terms.isEmpty()) {
+            return null;
+        }
+        build();
+        BitSet result = null;
+        for (String term : terms) {
+            BitSet matches = new BitSet(SongPath.count());
+            for (Posting posting : vocabulary.subMap(term, term + Character.MAX_VALUE).values()) {
+                posting.songs.forEachId(matches::set);
+            }
+            if (result == null) {
+                result = matches;
+            } else {
+                result.and(matches);
+            }
+            if (result.isEmpty()) {
+                break;
+            }
+        }
+        return result;
+    }
+
+    public boolean matches(BitSet hits, SongData song) {
+        return hits == null || (song.getPath() != null && hits.get(song.getPath().id()));
+    }
+
+    /**
+     * Re-indexes songs whose title, owners or details changed. Only the
+     * postings of words a song gained or lost are touched.
+     */
+    public void update(Collection<SongData> songs) {
+        if (!built) {
+            return;
+        }
+        for (SongData song : songs) {
+            Entry entry = entries.get(song);
+            if (entry == null) {
+                add(song, null);
+                continue;
+            }
+            String[] detailWords = song.detailsSource != null ? entry.detailWords : null;
+            Set<String> stale = new HashSet<>(Arrays.asList(entry.words));
+            entries.put(song, index(song, detailWords, stale));
+            for (String word : stale) {
+                unpost(word, song.getPath());
+            }
+        }
+    }
+
+    /**
+     * {@code owner} became an owner of {@code songs}: they are posted under
+     * the words of its name, without re-indexing the rest of each song.
+     */
+    void ownerAdded(ProjectArtistData owner, Collection<SongData> songs) {
+        if (!built) {
+            return;
+        }
+        List<String> nameWords = new ArrayList<>();
+        tokenize(owner.getName(), nameWords);
+        List<String> posted = new ArrayList<>();
+        for (SongData song : songs) {
+            Entry entry = entries.get(song);
+            if (entry == null) {
+                add(song, null);
+                continue;
+            }
+            posted.clear();
+            for (String word : nameWords) {
+                post(word, song.getPath(), posted, null);
+            }
+            if (!posted.isEmpty()) {
+                String[] words = Arrays.copyOf(entry.words, entry.words.length + posted.size());
+                for (int i = 0; i < posted.size(); i++) {
+                    words[entry.words.length + i] = posted.get(i);
+                }
+                entry.words = words;
+            }
+        }
+    }
+
+    void songAdded(SongData song) {
+        if (built) {
+            add(song, null);
+        }
+    }
+
+    void songRemoved(SongData song) {
+        if (built) {
+            remove(song);
+        }
+    }
+
+    /**
+     * Builds the index now rather than on the first search, e.g. when the
+     * search field gets focus, so typing the first letter does not wait for
+     * it.
+     */
+    public void prepare() {
+        build();
+    }
+
+    /**
+     * Indexes the whole library. Details of songs that are still on disk are
+     * read section by section instead of hydrating every song.
+     */
+    private void build() {
+        if (built) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        built = true;
+        Map<SongDetailsSource, byte[]> sections = new HashMap<>();
+        for (SongData song : data.getSongs()) {
+            String[] detailWords = null;
+            synchronized (SongDetailsSource.LOCK) {
+                SongDetailsSource source = song.detailsSource;
+                if (source != null) {
+                    detailWords = peekDetailWords(song, source, sections);
+                }
+            }
+            add(song, detailWords);
+        }
+        System.out.println("Indexed " + entries.size() + " songs for search in "
+                + (System.currentTimeMillis() - start) + " ms.");
+    }
+
+    private static String[] peekDetailWords(SongData song, SongDetailsSource source,
+            Map<SongDetailsSource, byte[]> sections) {
+        try {
+            byte[] section = sections.get(source);
+            if (section == null) {
+                section = source.readAll();
+                sections.put(source, section);
+            }
+            SongData details = new SongData();
+            LibrarySnapshot.readDetails(details, Arrays.copyOfRange(section, song.detailsOffset,
+                    song.detailsOffset + song.detailsLength));
+            return detailWords(details.subtitle, details.note);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return new String[0];
+        }
+    }
+
+    /**
+     * @param detailWords words of subtitle and note if known, or null to take
+     *                    them from the song (hydrating it)
+     */
+    private void add(SongData song, String[] detailWords) {
+        if (song.getPath() != null && !entries.containsKey(song)) {
+            entries.put(song, index(song, detailWords, null));
+        }
+    }
+
+    /**
+     * Posts {@code song} under its words.
+     *
+     * @param stale words the song was indexed under before, or null; words it
+     *              still has are taken out, leaving those it lost
+     */
+    private Entry index(SongData song, String[] detailWords, Set<String> stale) {
+        List<String> words = new ArrayList<>();
+        tokenize(song.getTitle(), words);
+        tokenize(song.getGuessedArtist(), words);
+        if (song.getOwners() != null) {
+            for (ProjectArtistData owner : song.getOwners()) {
+                tokenize(owner.getName(), words);
+            }
+        }
+        List<String> dirWords = directoryWords.get(song.getPath().getDirectory());
+        if (dirWords == null) {
+            dirWords = new ArrayList<>();
+            tokenize(song.getPath().getDirectory(), dirWords);
+            directoryWords.put(song.getPath().getDirectory(), dirWords);
+        }
+        words.addAll(dirWords);
+        tokenize(song.getPath().getName(), words);
+        Entry entry = new Entry();
+        entry.detailWords = detailWords != null ? detailWords : detailWords(song.getSubtitle(), song.getNote());
+        entry.words = intern(words, entry.detailWords, song.getPath(), stale);
+        return entry;
+    }
+
+    /**
+     * Posts the song under each distinct word and returns the words as the
+     * instances held by the index. {@code detailWords} are replaced by those
+     * instances too.
+     */
+    private String[] intern(List<String> words, String[] detailWords, SongPath path, Set<String> stale) {
+        List<String> all = new ArrayList<>(words.size() + detailWords.length);
+        for (String word : words) {
+            post(word, path, all, stale);
+        }
+        for (int i = 0; i < detailWords.length; i++) {
+            detailWords[i] = post(detailWords[i], path, all, stale);
+        }
+        return all.toArray(new String[0]);
+    }
+
+    private String post(String word, SongPath path, List<String> posted, Set<String> stale) {
+        Posting posting = postings.get(word);
+        if (posting == null) {
+            posting = new Posting(word);
+            postings.put(word, posting);
+            vocabulary.put(word, posting);
+        }
+        // a word the song already had is posted, but listed only once
+        if (posting.songs.add(path) || (stale != null && stale.remove(posting.word))) {
+            posted.add(posting.word);
+        }
+        return posting.word;
+    }
+
+    private void remove(SongData song) {
+        Entry entry = entries.remove(song);
+        if (entry == null) {
+            return;
+        }
+        for (String word : entry.words) {
+            unpost(word, song.getPath());
+        }
+    }
+
+    private void unpost(String word, SongPath path) {
+        Posting posting = postings.get(word);
+        if (posting != null) {
+            posting.songs.remove(path);
+            if (posting.songs.isEmpty()) {
+                postings.remove(word);
+                vocabulary.remove(word);
+            }
+        }
+    }
+
+    private static String[] detailWords(String subtitle, Note note) {
+        List<String> words = new ArrayList<>();
+        tokenize(subtitle, words);
+        if (note != null) {
+            tokenize(note.title, words);
+            tokenize(note.content, words);
+        }
+        return words.toArray(new String[0]);
+    }
+
+    /** Splits {@code text} into lower-case runs of letters and digits. */
+    static void tokenize(String text, List<String> words) {
+        if (text == null) {
+            return;
+        }
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                words.add(text.substring(start, i).toLowerCase());
+                start = -1;
+            }
+        }
+    }
+}
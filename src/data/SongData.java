@@ -1,20 +1,31 @@
 package data;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Date;
 
 public class SongData extends Data {
 
+    long id; // stable id, assigned by GlobalData
     String title;
     String guessedArtist;
     String subtitle;
-    String filePath;
+    SongPath filePath;
     int version;
     Note note;
     ArrayList<ProjectArtistData> owners;
     ArrayList<Date> changeHistory;
-    VersionedSongData parent;
+    transient VersionedSongData parent; // restored from the versions list on load
     transient long durationSeconds = -1;
+    transient String versionKey; // see VersionClusterer, reset when title or artist change
+    // set while subtitle, note and changeHistory are still on disk
+    transient volatile SongDetailsSource detailsSource;
+    transient int detailsOffset;
+    transient int detailsLength;
+
+    public long getId() {
+        return id;
+    }
 
     public String getTitle() {
         return title;
@@ -22,10 +33,12 @@ public class SongData extends Data {
 
     public void setTitle(String title) {
         this.title = title;
+        this.versionKey = null;
     }
 
     public void setGuessedArtist(String guessedArtist) {
         this.guessedArtist = guessedArtist;
+        this.versionKey = null;
     }
 
     public String getGuessedArtist() {
@@ -33,19 +46,26 @@ public class SongData extends Data {
     }
 
     public String getSubtitle() {
+        hydrate();
         return subtitle;
     }
 
     public void setSubtitle(String subtitle) {
+        hydrate();
         this.subtitle = subtitle;
     }
 
     public String getFilePath() {
+        return filePath != null ? filePath.toString() : null;
+    }
+
+    /** The interned path, for lookups and comparisons. */
+    public SongPath getPath() {
         return filePath;
     }
 
     public void setFilePath(String filePath) {
-        this.filePath = filePath;
+        this.filePath = SongPath.of(filePath);
     }
 
     public int getVersion() {
@@ -57,13 +77,42 @@ public class SongData extends Data {
     }
 
     public Note getNote() {
+        hydrate();
         return note;
     }
 
     public void setNote(Note note) {
+        hydrate();
         this.note = note;
     }
 
+    public ArrayList<Date> getChangeHistory() {
+        hydrate();
+        return changeHistory;
+    }
+
+    /**
+     * Reads subtitle, note and change history from the library snapshot if
+     * they have not been loaded yet.
+     */
+    void hydrate() {
+        if (detailsSource == null) {
+            return;
+        }
+        synchronized (SongDetailsSource.LOCK) {
+            SongDetailsSource source = detailsSource;
+            if (source == null) {
+                return;
+            }
+            try {
+                LibrarySnapshot.readDetails(this, source.read(detailsOffset, detailsLength));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            detailsSource = null;
+        }
+    }
+
     public ArrayList<ProjectArtistData> getOwners() {
         return owners;
     }
@@ -74,7 +123,25 @@ public class SongData extends Data {
 
     public long getDurationSeconds() {
         if (durationSeconds < 0 && filePath != null) {
-            durationSeconds = FileManager.getSongDurationSeconds(new java.io.File(filePath));
+            // a cached entry is used as is; the cache revalidates itself in the background
+            String path = filePath.toString();
+            AudioMetadata cached = MetadataCache.get().peek(path);
+            durationSeconds = cached != null ? cached.getDurationSeconds()
+                    : FileManager.getSongDurationSeconds(new java.io.File(path));
+        }
+        return durationSeconds;
+    }
+
+    /**
+     * Returns the duration if it is known without reading the file, otherwise
+     * -1.
+     */
+    public long getKnownDurationSeconds() {
+        if (durationSeconds < 0 && filePath != null) {
+            AudioMetadata cached = MetadataCache.get().peek(filePath.toString());
+            if (cached != null) {
+                durationSeconds = cached.getDurationSeconds();
+            }
         }
         return durationSeconds;
     }
@@ -0,0 +1,55 @@
+package data;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * The details section of a library snapshot on disk, from which the rarely
+ * used fields of a song (subtitle, note, change history) are read when they
+ * are first accessed.
+ *
+ * Reading details and replacing the snapshot file are both done while
+ * holding {@link #LOCK}, so a song is never read from a file that no longer
+ * matches its offsets. When the file is replaced, the section is kept in
+ * memory for library copies that were taken before and still point here.
+ */
+class SongDetailsSource {
+    static final Object LOCK = new Object();
+
+    final File file;
+    long base; // file offset of the details section
+    int length; // length of the details section
+    private byte[] retired; // the section, once the file holds a newer snapshot
+
+    SongDetailsSource(File file) {
+        this.file = file;
+    }
+
+    /** Reads one song's record. Call while holding {@link #LOCK}. */
+    byte[] read(int offset, int count) throws IOException {
+        byte[] bytes = new byte[count];
+        if (retired != null) {
+            System.arraycopy(retired, offset, bytes, 0, count);
+            return bytes;
+        }
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            in.seek(base + offset);
+            in.readFully(bytes);
+        }
+        return bytes;
+    }
+
+    /** Reads the whole details section. Call while holding {@link #LOCK}. */
+    byte[] readAll() throws IOException {
+        return retired != null ? retired : read(0, length);
+    }
+
+    /**
+     * Keeps {@code section}, as read by {@link #readAll}, for reads after the
+     * file was replaced. Call while holding {@link #LOCK}.
+     */
+    void retire(byte[] section) {
+        retired = section;
+    }
+}
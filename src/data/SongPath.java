@@ -0,0 +1,137 @@
+package data;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * An interned song file path. There is one instance per distinct path, so
+ * paths compare by identity and hash by their dense {@link #id()}. The id
+ * doubles as the song's dense id for membership sets ({@link SongSet}).
+ *
+ * Only the file name is kept per path; the directory is shared by all files
+ * in it, so long prefixes such as {@code /Users/.../bounces/} are stored once
+ * instead of once per song, playlist entry and project entry. The full path
+ * is built when {@link #toString()} is called.
+ *
+ * The table only grows: a path stays interned after its song is removed.
+ */
+public final class SongPath {
+    private static final HashMap<String, Directory> directories = new HashMap<>();
+    private static SongPath[] byId = new SongPath[1024];
+    private static int nextId;
+
+    private static final class Directory {
+        final String path; // including the trailing separator, "" for bare file names
+        final HashMap<String, SongPath> files = new HashMap<>();
+
+        Directory(String path) {
+            this.path = path;
+        }
+    }
+
+    private final Directory directory;
+    private final String name;
+    private final int id;
+
+    private SongPath(Directory directory, String name, int id) {
+        this.directory = directory;
+        this.name = name;
+        this.id = id;
+    }
+
+    /**
+     * @return the instance for {@code path}, created on first use; null for
+     *         null
+     */
+    public static SongPath of(String path) {
+        if (path == null) {
+            return null;
+        }
+        int split = lastSeparator(path) + 1;
+        synchronized (directories) {
+            Directory dir = directories.get(path.substring(0, split));
+            if (dir == null) {
+                dir = new Directory(path.substring(0, split));
+                directories.put(dir.path, dir);
+            }
+            String name = path.substring(split);
+            SongPath songPath = dir.files.get(name);
+            if (songPath == null) {
+                songPath = new SongPath(dir, name, nextId++);
+                dir.files.put(name, songPath);
+                if (songPath.id == byId.length) {
+                    byId = Arrays.copyOf(byId, byId.length * 2);
+                }
+                byId[songPath.id] = songPath;
+            }
+            return songPath;
+        }
+    }
+
+    /**
+     * @return the instance for {@code path} if it has been interned, without
+     *         creating one
+     */
+    public static SongPath find(String path) {
+        if (path == null) {
+            return null;
+        }
+        int split = lastSeparator(path) + 1;
+        synchronized (directories) {
+            Directory dir = directories.get(path.substring(0, split));
+            return dir != null ? dir.files.get(path.substring(split)) : null;
+        }
+    }
+
+    /** The instance with the given {@link #id()}. */
+    public static SongPath byId(int id) {
+        synchronized (directories) {
+            return byId[id];
+        }
+    }
+
+    /** Number of interned paths; all ids are below it. */
+    public static int count() {
+        synchronized (directories) {
+            return nextId;
+        }
+    }
+
+    private static int lastSeparator(String path) {
+        // accept both separators so paths written on another platform still split
+        return Math.max(path.lastIndexOf('/'), path.lastIndexOf(File.separatorChar));
+    }
+
+    /** Dense id, unique for this run. */
+    public int id() {
+        return id;
+    }
+
+    /** The file name, without allocating. */
+    public String getName() {
+        return name;
+    }
+
+    /** The directory including its trailing separator. */
+    public String getDirectory() {
+        return directory.path;
+    }
+
+    public boolean startsWith(String prefix) {
+        if (prefix.length() <= directory.path.length()) {
+            return directory.path.startsWith(prefix);
+        }
+        return toString().startsWith(prefix);
+    }
+
+    @Override
+    public int hashCode() {
+        return id;
+    }
+
+    @Override
+    public String toString() {
+        return directory.path.concat(name);
+    }
+}
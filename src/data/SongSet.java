@@ -0,0 +1,255 @@
+package data;
+
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.IntConsumer;
+
+/**
+ * The songs of a playlist or project, as the dense ids of their paths (see
+ * {@link SongPath#id()}), in the order they were added.
+ *
+ * Membership is an open-addressing int hash table from id to position in the
+ * order array, so add, remove and contains are O(1) and no boxing happens.
+ * A removed song leaves a hole in the order array that is compacted away
+ * once holes make up half of it. A song is only contained once.
+ */
+public class SongSet implements Iterable<SongPath> {
+    private static final int FREE = -1;
+
+    private int[] order; // ids in insertion order, FREE where a song was removed
+    private int end; // used length of order
+    private int size;
+    private int[] keys; // hash table: id, or FREE
+    private int[] positions; // hash table: position of the id in order
+    private int modCount; // lets iterators detect changes made while iterating
+
+    public SongSet() {
+        this(4);
+    }
+
+    public SongSet(int expectedSize) {
+        order = new int[Math.max(expectedSize, 4)];
+        allocateTable(expectedSize);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean contains(SongPath path) {
+        return path != null && contains(path.id());
+    }
+
+    public boolean contains(int id) {
+        return slotOf(id) >= 0;
+    }
+
+    /**
+     * Appends {@code path} unless it is already contained.
+     *
+     * @return whether it was added
+     */
+    public boolean add(SongPath path) {
+        if (path == null || contains(path.id())) {
+            return false;
+        }
+        if (end == order.length) {
+            if (end > 2 * size) {
+                compact();
+            } else {
+                int[] grown = new int[order.length * 2];
+                System.arraycopy(order, 0, grown, 0, end);
+                order = grown;
+            }
+        }
+        if ((size + 1) * 2 > keys.length) {
+            rehash(keys.length * 2);
+        }
+        insert(path.id(), end);
+        order[end++] = path.id();
+        size++;
+        modCount++;
+        return true;
+    }
+
+    /**
+     * @return whether {@code path} was contained
+     */
+    public boolean remove(SongPath path) {
+        if (path == null) {
+            return false;
+        }
+        int slot = slotOf(path.id());
+        if (slot < 0) {
+            return false;
+        }
+        order[positions[slot]] = FREE;
+        deleteSlot(slot);
+        size--;
+        modCount++;
+        if (end > 16 && end > 2 * size) {
+            compact();
+        }
+        return true;
+    }
+
+    /**
+     * @return a number that orders {@code path} among the contained songs as
+     *         they were added, or -1 if it is not contained; changes when
+     *         songs are removed
+     */
+    int position(SongPath path) {
+        int slot = path != null ? slotOf(path.id()) : -1;
+        return slot >= 0 ? positions[slot] : -1;
+    }
+
+    /** @return an independent set with the same songs in the same order */
+    SongSet copy() {
+        SongSet copy = new SongSet(0);
+        copy.order = Arrays.copyOf(order, Math.max(end, 4));
+        copy.end = end;
+        copy.size = size;
+        copy.keys = keys.clone();
+        copy.positions = positions.clone();
+        return copy;
+    }
+
+    /**
+     * @return the songs contained in both sets, in the order of this one
+     */
+    public SongSet and(SongSet other) {
+        SongSet result = new SongSet(Math.min(size, other.size));
+        for (int i = 0; i < end; i++) {
+            int id = order[i];
+            if (id != FREE && other.contains(id)) {
+                result.add(SongPath.byId(id));
+            }
+        }
+        return result;
+    }
+
+    /** Calls {@code action} with each id, in order, without allocating. */
+    public void forEachId(IntConsumer action) {
+        for (int i = 0; i < end; i++) {
+            if (order[i] != FREE) {
+                action.accept(order[i]);
+            }
+        }
+    }
+
+    @Override
+    public Iterator<SongPath> iterator() {
+        return new Iterator<SongPath>() {
+            private int next = skipFree(0);
+            private final int expectedModCount = modCount;
+
+            @Override
+            public boolean hasNext() {
+                return next < end;
+            }
+
+            @Override
+            public SongPath next() {
+                if (next >= end) {
+                    throw new NoSuchElementException();
+                }
+                int id = order[next];
+                if (modCount != expectedModCount || id == FREE) {
+                    throw new ConcurrentModificationException();
+                }
+                SongPath path = SongPath.byId(id);
+                next = skipFree(next + 1);
+                return path;
+            }
+        };
+    }
+
+    private int skipFree(int i) {
+        while (i < end && order[i] == FREE) {
+            i++;
+        }
+        return i;
+    }
+
+    private void allocateTable(int expectedSize) {
+        int capacity = 8;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        keys = new int[capacity];
+        positions = new int[capacity];
+        Arrays.fill(keys, FREE);
+    }
+
+    private int home(int id) {
+        return (id * 0x9E3779B9) >>> (32 - Integer.numberOfTrailingZeros(keys.length)) & (keys.length - 1);
+    }
+
+    private int slotOf(int id) {
+        int mask = keys.length - 1;
+        for (int slot = home(id);; slot = (slot + 1) & mask) {
+            int key = keys[slot];
+            if (key == id) {
+                return slot;
+            }
+            if (key == FREE) {
+                return -1;
+            }
+        }
+    }
+
+    private void insert(int id, int position) {
+        int mask = keys.length - 1;
+        int slot = home(id);
+        while (keys[slot] != FREE) {
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = id;
+        positions[slot] = position;
+    }
+
+    /** Linear-probing delete: shifts later entries of the cluster back. */
+    private void deleteSlot(int slot) {
+        int mask = keys.length - 1;
+        keys[slot] = FREE;
+        for (int next = (slot + 1) & mask; keys[next] != FREE; next = (next + 1) & mask) {
+            int home = home(keys[next]);
+            boolean reachable = slot <= next ? slot < home && home <= next : slot < home || home <= next;
+            if (!reachable) {
+                keys[slot] = keys[next];
+                positions[slot] = positions[next];
+                keys[next] = FREE;
+                slot = next;
+            }
+        }
+    }
+
+    private void rehash(int capacity) {
+        keys = new int[capacity];
+        positions = new int[capacity];
+        Arrays.fill(keys, FREE);
+        for (int i = 0; i < end; i++) {
+            if (order[i] != FREE) {
+                insert(order[i], i);
+            }
+        }
+    }
+
+    /** Closes the holes left by removed songs. */
+    private void compact() {
+        int live = 0;
+        for (int i = 0; i < end; i++) {
+            if (order[i] != FREE) {
+                order[live++] = order[i];
+            }
+        }
+        end = live;
+        rehash(keys.length);
+    }
+}
@@ -0,0 +1,322 @@
+package data;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Finds songs that are versions of each other, such as "Spectral Orbit
+ * (mix1)" and "Spectral Orbit v2 final", so they can share one
+ * {@link VersionedSongData}.
+ *
+ * Titles are normalised first: lower case, with bracketed and trailing
+ * version markers (mix, v2, final, master, dates, ...) removed. Songs are then
+ * blocked by artist plus the first letters of the normalised title, and within
+ * a block two songs are versions if their titles are within a small edit
+ * distance and contain the same numbers ("Track 12" is not a version of
+ * "Track 13").
+ */
+public class VersionClusterer {
+    private static final int BLOCK_PREFIX = 3;
+    private static final Pattern DATE = Pattern.compile("(19|20)\\d\\d[-_.]?[01]\\d[-_.]?[0-3]\\d|\\b[0-3]\\d[01]\\d(19|20)?\\d\\d\\b");
+    private static final Pattern BRACKETS = Pattern.compile("[(\\[{]([^)\\]}]*)[)\\]}]");
+    private static final Pattern VERSION_WORD = Pattern.compile(
+            "(v|ver|version|mix|mixdown|remix|take|bounce|master|mastered|premaster|final|demo|rough|edit"
+                    + "|alt|wip|draft|copy|remaster|remastered|instrumental|inst|stem|print)\\d*|v\\d+[a-z]?");
+
+    private VersionClusterer() {
+    }
+
+    /**
+     * @return the title without version markers, in lower case with single
+     *         spaces between words
+     */
+    public static String normalizeTitle(String title) {
+        if (title == null) {
+            return "";
+        }
+        String s = DATE.matcher(title.toLowerCase()).replaceAll(" ");
+        java.util.regex.Matcher brackets = BRACKETS.matcher(s);
+        StringBuilder kept = new StringBuilder();
+        while (brackets.find()) {
+            // "(mix 2)" goes, "(feat. someone)" stays
+            brackets.appendReplacement(kept, isVersionMarker(brackets.group(1)) ? " " : " $1 ");
+        }
+        brackets.appendTail(kept);
+
+        List<String> words = new ArrayList<>();
+        SearchIndex.tokenize(kept.toString(), words);
+        int end = words.size();
+        while (end > 1) {
+            String last = words.get(end - 1);
+            if (VERSION_WORD.matcher(last).matches()) {
+                end--;
+            } else if (end > 2 && isNumber(last) && VERSION_WORD.matcher(words.get(end - 2)).matches()) {
+                end -= 2; // "mix 2": the number belongs to the marker
+            } else {
+                break;
+            }
+        }
+        return String.join(" ", words.subList(0, end));
+    }
+
+    private static boolean isVersionMarker(String text) {
+        List<String> words = new ArrayList<>();
+        SearchIndex.tokenize(text, words);
+        if (words.isEmpty()) {
+            return true;
+        }
+        for (String word : words) {
+            if (!VERSION_WORD.matcher(word).matches() && !isNumber(word)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isNumber(String word) {
+        for (int i = 0; i < word.length(); i++) {
+            if (!Character.isDigit(word.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Artist and normalised title, separated by a NUL; cached on the song
+     * until its title or artist changes.
+     */
+    static String versionKey(SongData song) {
+        String key = song.versionKey;
+        if (key == null) {
+            String title = song.getTitle();
+            if ((title == null || title.isBlank()) && song.getPath() != null) {
+                title = song.getPath().getName();
+                int dot = title.lastIndexOf('.');
+                title = dot > 0 ? title.substring(0, dot) : title;
+            }
+            String artist = song.getGuessedArtist() != null ? song.getGuessedArtist().trim().toLowerCase() : "";
+            key = artist + '\0' + normalizeTitle(title);
+            song.versionKey = key;
+        }
+        return key;
+    }
+
+    private static String blockKey(String versionKey) {
+        int title = versionKey.indexOf('\0') + 1;
+        return versionKey.substring(0, Math.min(versionKey.length(), title + BLOCK_PREFIX));
+    }
+
+    private static String titleOf(String versionKey) {
+        return versionKey.substring(versionKey.indexOf('\0') + 1);
+    }
+
+    /** Whether {@code a} and {@code b} look like versions of one song. */
+    public static boolean similar(SongData a, SongData b) {
+        String keyA = versionKey(a);
+        String keyB = versionKey(b);
+        return blockKey(keyA).equals(blockKey(keyB)) && similarTitles(titleOf(keyA), titleOf(keyB));
+    }
+
+    private static boolean similarTitles(String a, String b) {
+        if (a.isEmpty() || b.isEmpty()) {
+            return false;
+        }
+        if (a.equals(b)) {
+            return true;
+        }
+        if (!digitsOf(a).equals(digitsOf(b))) {
+            return false;
+        }
+        int length = Math.min(a.length(), b.length());
+        int allowed = length <= 4 ? 0 : length <= 10 ? 1 : 2;
+        return allowed > 0 && editDistance(a, b, allowed) <= allowed;
+    }
+
+    private static String digitsOf(String s) {
+        StringBuilder digits = new StringBuilder();
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (Character.isDigit(c)) {
+                digits.append(c);
+            } else if (digits.length() > 0 && digits.charAt(digits.length() - 1) != ' ') {
+                digits.append(' ');
+            }
+        }
+        return digits.toString().trim();
+    }
+
+    /**
+     * Levenshtein distance, computed only within a band of {@code max} around
+     * the diagonal.
+     *
+     * @return the distance, or {@code max + 1} if it is larger than {@code max}
+     */
+    static int editDistance(String a, String b, int max) {
+        if (Math.abs(a.length() - b.length()) > max) {
+            return max + 1;
+        }
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            int from = Math.max(1, i - max);
+            int to = Math.min(b.length(), i + max);
+            current[0] = i;
+            if (from > 1) {
+                current[from - 1] = max + 1;
+            }
+            int rowMin = from == 1 ? i : max + 1;
+            for (int j = from; j <= to; j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                int d = Math.min(previous[j - 1] + cost, Math.min(previous[j] + 1, current[j - 1] + 1));
+                current[j] = d;
+                rowMin = Math.min(rowMin, d);
+            }
+            if (to < b.length()) {
+                current[to + 1] = max + 1;
+            }
+            if (rowMin > max) {
+                return max + 1;
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return Math.min(previous[b.length()], max + 1);
+    }
+
+    /**
+     * Groups {@code songs} into clusters of versions. Blocks are clustered in
+     * parallel on the common fork/join pool.
+     *
+     * @return clusters with more than one song, each in the order of
+     *         {@code songs}
+     */
+    public static List<List<SongData>> cluster(Collection<SongData> songs) {
+        List<SongData> ordered = new ArrayList<>(songs);
+        Map<String, List<SongData>> blocks = ordered.parallelStream()
+                .filter(song -> !titleOf(versionKey(song)).isEmpty())
+                .collect(Collectors.groupingByConcurrent(song -> blockKey(versionKey(song))));
+        List<List<SongData>> clusters = blocks.values().parallelStream()
+                .filter(block -> block.size() > 1)
+                .flatMap(block -> clusterBlock(block).stream())
+                .collect(Collectors.toList());
+        // groupingByConcurrent does not keep the order
+        Map<SongData, Integer> position = new HashMap<>();
+        for (int i = 0; i < ordered.size(); i++) {
+            position.put(ordered.get(i), i);
+        }
+        for (List<SongData> cluster : clusters) {
+            cluster.sort((x, y) -> Integer.compare(position.get(x), position.get(y)));
+        }
+        return clusters;
+    }
+
+    /**
+     * Clusters one block: songs with equal titles are joined directly, the
+     * distinct titles are then compared pairwise.
+     */
+    private static List<List<SongData>> clusterBlock(List<SongData> block) {
+        Map<String, List<SongData>> byTitle = new HashMap<>();
+        for (SongData song : block) {
+            byTitle.computeIfAbsent(titleOf(versionKey(song)), k -> new ArrayList<>()).add(song);
+        }
+        List<String> titles = new ArrayList<>(byTitle.keySet());
+        int[] parent = new int[titles.size()];
+        for (int i = 0; i < parent.length; i++) {
+            parent[i] = i;
+        }
+        for (int i = 0; i < titles.size(); i++) {
+            for (int j = i + 1; j < titles.size(); j++) {
+                if (similarTitles(titles.get(i), titles.get(j))) {
+                    parent[find(parent, i)] = find(parent, j);
+                }
+            }
+        }
+        Map<Integer, List<SongData>> clusters = new HashMap<>();
+        for (int i = 0; i < titles.size(); i++) {
+            clusters.computeIfAbsent(find(parent, i), k -> new ArrayList<>()).addAll(byTitle.get(titles.get(i)));
+        }
+        List<List<SongData>> result = new ArrayList<>();
+        for (List<SongData> cluster : clusters.values()) {
+            if (cluster.size() > 1) {
+                result.add(cluster);
+            }
+        }
+        return result;
+    }
+
+    private static int find(int[] parent, int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    /**
+     * The songs of the library by block, for matching songs being imported.
+     * {@link GlobalData} keeps it up to date as songs are added and removed,
+     * so matching a new song only looks at its block.
+     */
+    public static class Matcher {
+        private final Map<String, List<SongData>> blocks = new HashMap<>();
+        // block each song was filed under, in case its key changed since
+        private final Map<SongData, String> filed = new IdentityHashMap<>();
+
+        /**
+         * @return another song in the library that {@code song} is a version
+         *         of, preferring equal titles; null if there is none
+         */
+        public SongData match(SongData song) {
+            String key = versionKey(song);
+            List<SongData> block = blocks.get(blockKey(key));
+            if (block == null) {
+                return null;
+            }
+            SongData similar = null;
+            for (SongData candidate : block) {
+                if (candidate == song) {
+                    continue;
+                }
+                String candidateKey = versionKey(candidate);
+                if (candidateKey.equals(key)) {
+                    return candidate;
+                }
+                if (similar == null && similarTitles(titleOf(key), titleOf(candidateKey))) {
+                    similar = candidate;
+                }
+            }
+            return similar;
+        }
+
+        /** Makes {@code song} a candidate for the songs matched after it. */
+        void add(SongData song) {
+            String block = blockKey(versionKey(song));
+            if (filed.putIfAbsent(song, block) == null) {
+                blocks.computeIfAbsent(block, k -> new ArrayList<>()).add(song);
+            }
+        }
+
+        void remove(SongData song) {
+            String block = filed.remove(song);
+            if (block == null) {
+                return;
+            }
+            List<SongData> songs = blocks.get(block);
+            songs.remove(song);
+            if (songs.isEmpty()) {
+                blocks.remove(block);
+            }
+        }
+    }
+}
@@ -4,6 +4,7 @@ import java.util.ArrayList;
 
 public class VersionedSongData extends Data {
 
+    long id; // stable id, assigned by GlobalData
     ArrayList<SongData> versions;
     SongData starred;
     boolean isEmpty = true;
@@ -36,6 +37,21 @@ public class VersionedSongData extends Data {
         }
     }
 
+    public long getId() {
+        return id;
+    }
+
+    public ArrayList<SongData> getVersions() {
+        if (versions == null) {
+            versions = new ArrayList<>();
+        }
+        return versions;
+    }
+
+    public SongData getStarred() {
+        return starred;
+    }
+
     public void setStarred(SongData starred) {
         if(starred != null && !versions.contains(starred)) {
             throw new IllegalArgumentException("The starred version must be one of the versions in the list.");
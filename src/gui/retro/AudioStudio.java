@@ -22,6 +22,8 @@ import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseMotionAdapter;
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
 
 import javax.swing.BorderFactory;
 import javax.swing.JButton;
@@ -29,10 +31,12 @@ import javax.swing.JLabel;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JWindow;
+import javax.swing.SwingUtilities;
 import javax.swing.Timer;
 
 import application.ApplicationResources;
 import data.SongData;
+import data.VersionedSongData;
 
 public class AudioStudio implements ActionListener {
     ApplicationResources app;
@@ -108,13 +112,19 @@ public class AudioStudio implements ActionListener {
 
                 doubleClicked -> {
                     if (doubleClicked != null) {
-                        app.audioPlayer._playAudio(doubleClicked.getFilePath());
-                        transportRack.setSong(doubleClicked);
+                        playSong(doubleClicked);
                     }
                 });
 
+        // Follow gapless hand-overs to the next song of the list
+        app.audioPlayer.setTrackChangeListener(path -> SwingUtilities.invokeLater(() -> onTrackChanged(path)));
+
         // Create groups rack (left)
         groupRack = new GroupRack(app, mainWindow, songsRack::refreshSongList);
+        // live updates from the tracked folders, applied on the EDT
+        app.fileManager.getFolderWatcher().start(
+                changes -> SwingUtilities.invokeLater(() -> app.actionHandler.applyFolderChanges(changes)));
+        groupRack.rescanFolders(); // pick up files added while the app was closed
 
         // wire up SongLCDPanel clicks: open folder and jump to project
         gui.retro.SongLCDPanel songPanel = transportRack.getSongPanel();
@@ -343,6 +353,69 @@ public class AudioStudio implements ActionListener {
         timelineUpdateTimer.start();
     }
 
+    private void playSong(SongData song) {
+        app.audioPlayer._playAudio(song.getFilePath());
+        transportRack.setSong(song);
+        queueNextSong(song);
+    }
+
+    /**
+     * Fill the player's next-track slot with the song following {@code song}
+     * in the browser, so playback continues in list order without a gap.
+     */
+    private void queueNextSong(SongData song) {
+        app.audioPlayer.setNextTrack(songsRack.getSongAfter(song));
+    }
+
+    /**
+     * A/B compare: switch playback to the next version of the current song,
+     * keeping the position. The first press enters compare mode.
+     */
+    private void compareNextVersion() {
+        SongData current = null;
+        if (app.audioPlayer.isComparing())
+            current = app.data.getSong(app.audioPlayer.getComparedPath());
+        if (current == null)
+            current = transportRack.getSongPanel().getSong();
+        if (current == null)
+            current = lastData;
+        if (current == null || current.getParent() == null)
+            return;
+        VersionedSongData versioned = current.getParent();
+        List<SongData> versions = versioned.getVersions();
+        if (versions.size() < 2)
+            return;
+
+        int index = versions.indexOf(current);
+        SongData target = versions.get((index + 1) % versions.size());
+        if (app.audioPlayer.isComparing()) {
+            // versions shorter than the playhead have ended and are passed over
+            int step = 1;
+            while (!app.audioPlayer.switchVersion(target.getFilePath())) {
+                if (++step == versions.size())
+                    return;
+                target = versions.get((index + step) % versions.size());
+            }
+        } else {
+            List<String> paths = new ArrayList<>();
+            for (SongData version : versions)
+                paths.add(version.getFilePath());
+            app.audioPlayer.startCompare(paths, target.getFilePath());
+        }
+        lastData = target;
+        transportRack.setSong(target);
+    }
+
+    private void onTrackChanged(String filePath) {
+        SongData song = app.data.getSong(filePath);
+        if (song == null)
+            return;
+        lastData = song;
+        transportRack.setSong(song);
+        songsRack.setSelectedSong(song);
+        queueNextSong(song);
+    }
+
     public void refreshSongList() {
         if (songsRack != null)
             songsRack.refreshSongList();
@@ -361,17 +434,20 @@ public class AudioStudio implements ActionListener {
             if (app.audioPlayer.isPaused()) {
                 app.audioPlayer.resume();
             } else if (lastData != null) {
-                app.audioPlayer._playAudio(lastData.getFilePath());
-                transportRack.setSong(lastData);
+                playSong(lastData);
             }
         } else if (e.getSource() == transportRack.getPauseButton()) {
             app.audioPlayer.pause();
+        } else if (e.getSource() == transportRack.getCompareButton()) {
+            compareNextVersion();
         } else if (e.getSource() == transportRack.getStopButton()) {
             app.audioPlayer.stop();
             transportRack.getTimeline().setCurrentTime(0);
             transportRack.getTimeline().setTotalTime(0);
             transportRack.setSong(null);
         } else if (e.getSource() == closeButton) {
+            // make sure queued journal records and snapshots reach the disk
+            app.fileManager.flush();
             mainWindow.dispose();
             System.exit(0);
         }
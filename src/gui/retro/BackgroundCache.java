@@ -0,0 +1,119 @@
+package gui.retro;
+
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Pre-rendered static layers of the retro components: rack panel faces,
+ * LCD backgrounds with their scanlines, LED sprites. A layer is painted once
+ * per size and device scale into an image, and every later paint is one
+ * image copy; only text and LEDs are drawn per frame.
+ *
+ * The images are shared by all components on the EDT, keyed by layer, size
+ * and scale, so a resized component simply asks for a new size. The least
+ * recently used images are dropped beyond {@link #MAX_BYTES}. The
+ * {@link RetroTheme} colours are constants, so an image never goes stale.
+ */
+final class BackgroundCache {
+    private static final long MAX_BYTES = 32L * 1024 * 1024;
+
+    /** Paints a layer in its own coordinates, from (0, 0). */
+    interface Layer {
+        void paint(Graphics2D g, int width, int height);
+    }
+
+    private static final class Key {
+        final Layer layer;
+        final int width;
+        final int height;
+        final double scale;
+
+        Key(Layer layer, int width, int height, double scale) {
+            this.layer = layer;
+            this.width = width;
+            this.height = height;
+            this.scale = scale;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key))
+                return false;
+            Key k = (Key) o;
+            return layer == k.layer && width == k.width && height == k.height && scale == k.scale;
+        }
+
+        @Override
+        public int hashCode() {
+            return ((System.identityHashCode(layer) * 31 + width) * 31 + height) * 31 + Double.hashCode(scale);
+        }
+    }
+
+    private static final Map<Key, BufferedImage> images = new LinkedHashMap<>(16, 0.75f, true);
+    private static long bytes;
+
+    private BackgroundCache() {
+    }
+
+    /**
+     * Draws {@code layer} at {@code x, y} in {@code width} x {@code height},
+     * painting it into a new image first if there is none for this size.
+     * Layers that cover every pixel with opaque colours pass {@code opaque}.
+     */
+    static void draw(Graphics2D g, Layer layer, boolean opaque, int x, int y, int width, int height) {
+        if (width <= 0 || height <= 0)
+            return;
+        g.drawImage(image(g, layer, opaque, width, height), x, y, width, height, null);
+    }
+
+    private static BufferedImage image(Graphics2D g, Layer layer, boolean opaque, int width, int height) {
+        double scale = g.getTransform().getScaleX();
+        Key key = new Key(layer, width, height, scale);
+        BufferedImage image = images.get(key);
+        if (image == null) {
+            image = render(g.getDeviceConfiguration(), layer, opaque, width, height, scale);
+            images.put(key, image);
+            bytes += bytes(image);
+            trim();
+        }
+        return image;
+    }
+
+    private static BufferedImage render(GraphicsConfiguration gc, Layer layer, boolean opaque, int width,
+            int height, double scale) {
+        int w = (int) Math.ceil(width * scale);
+        int h = (int) Math.ceil(height * scale);
+        int transparency = opaque ? Transparency.OPAQUE : Transparency.TRANSLUCENT;
+        BufferedImage image;
+        if (gc != null) {
+            image = gc.createCompatibleImage(w, h, transparency);
+        } else {
+            image = new BufferedImage(w, h, opaque ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
+        }
+        Graphics2D g = image.createGraphics();
+        g.scale(scale, scale);
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        layer.paint(g, width, height);
+        g.dispose();
+        return image;
+    }
+
+    private static void trim() {
+        // the newest image stays, however large it is
+        Iterator<BufferedImage> eldest = images.values().iterator();
+        while (bytes > MAX_BYTES && images.size() > 1) {
+            bytes -= bytes(eldest.next());
+            eldest.remove();
+        }
+    }
+
+    private static long bytes(BufferedImage image) {
+        return 4L * image.getWidth() * image.getHeight();
+    }
+}
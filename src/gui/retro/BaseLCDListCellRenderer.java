@@ -7,42 +7,156 @@ import static gui.retro.RetroTheme.*;
 
 /**
  * Base renderer that centralizes LCD styling, alternating-row coloring and a
- * reusable two-column (primary + secondary) layout used by list renderers.
+ * reusable two-column (primary + secondary) row used by list renderers.
  */
 public abstract class BaseLCDListCellRenderer extends DefaultListCellRenderer {
     private static final long serialVersionUID = 1L;
 
+    private final TwoColumnCell twoColumnCell = new TwoColumnCell();
+
     /**
-     * Create a two-column component (primary centered, secondary right-aligned)
-     * that matches the RetroTheme look used throughout the UI.
+     * Returns the two-column component (primary left, secondary right-aligned)
+     * that matches the RetroTheme look used throughout the UI. The same
+     * component is returned for every row, set up for this one.
      */
     protected Component twoColumnComponent(String primaryText, String secondaryText, boolean isSelected, int index) {
-        JPanel panel = new JPanel(new BorderLayout());
-        JLabel primary = new JLabel(primaryText);
-        JLabel secondary = new JLabel(secondaryText);
+        Color bgColor = isSelected ? LCD_BACKGROUND_SELECTED : (index % 2 == 0 ? LCD_BACKGROUND : LCD_BACKGROUND_ALT);
+        Color fgColor = isSelected ? LCD_TEXT_SELECTED : LCD_TEXT;
+        twoColumnCell.set(primaryText, secondaryText, bgColor, fgColor);
+        return twoColumnCell;
+    }
 
-        primary.setFont(LCD_FONT);
-        secondary.setFont(LCD_FONT);
+    /**
+     * Flyweight row of the two-column lists. It paints the background and
+     * both texts itself with cached font metrics, cutting the primary text off
+     * with an ellipsis where it would run into the secondary one, and
+     * allocates nothing while painting. Like {@link DefaultListCellRenderer}
+     * it skips the validation and repaint requests of a real component.
+     */
+    static class TwoColumnCell extends JComponent {
+        private static final long serialVersionUID = 1L;
+        private static final int PADDING = 12; // left and right
+        private static final int GAP = 8; // between the columns
+        private static final int ROW_HEIGHT = 32;
+        private static final char[] ELLIPSIS = { '.', '.', '.' };
+        private static final Object TEXT_ANTIALIASING = desktopHint(RenderingHints.KEY_TEXT_ANTIALIASING);
 
-        panel.add(primary, BorderLayout.CENTER);
-        panel.add(secondary, BorderLayout.EAST);
+        private String primary = "";
+        private String secondary = "";
+        private Color background = LCD_BACKGROUND;
+        private Color foreground = LCD_TEXT;
+        private transient FontMetrics metrics;
+        private char[] chars = new char[128];
 
-        Color bgColor = isSelected ? LCD_BACKGROUND_SELECTED : (index % 2 == 0 ? LCD_BACKGROUND : LCD_BACKGROUND_ALT);
-        Color fgColor = isSelected ? LCD_TEXT_SELECTED : LCD_TEXT;
+        void set(String primary, String secondary, Color background, Color foreground) {
+            this.primary = primary != null ? primary : "";
+            this.secondary = secondary != null ? secondary : "";
+            this.background = background;
+            this.foreground = foreground;
+        }
+
+        @Override
+        public void paint(Graphics g) {
+            FontMetrics fm = metrics();
+            int width = getWidth();
+            int height = getHeight();
+            g.setColor(background);
+            g.fillRect(0, 0, width, height);
+
+            if (TEXT_ANTIALIASING != null && g instanceof Graphics2D) {
+                ((Graphics2D) g).setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, TEXT_ANTIALIASING);
+            }
+            g.setFont(LCD_FONT);
+            g.setColor(foreground);
+            int baseline = (height - fm.getHeight()) / 2 + fm.getAscent();
+            int right = width - PADDING;
+
+            if (!secondary.isEmpty()) {
+                int length = load(secondary);
+                int secondaryWidth = fm.charsWidth(chars, 0, length);
+                g.drawChars(chars, 0, length, right - secondaryWidth, baseline);
+                right -= secondaryWidth + GAP;
+            }
+            int length = load(primary);
+            int available = right - PADDING;
+            if (fm.charsWidth(chars, 0, length) > available) {
+                length = ellipsize(fm, length, available);
+            }
+            g.drawChars(chars, 0, length, PADDING, baseline);
+        }
 
-        panel.setBackground(bgColor);
-        primary.setForeground(fgColor);
-        secondary.setForeground(fgColor);
+        /** Copies {@code text} into the buffer, with room for the ellipsis. */
+        private int load(String text) {
+            int length = text.length();
+            if (chars.length < length + ELLIPSIS.length) {
+                chars = new char[Math.max(length + ELLIPSIS.length, chars.length * 2)];
+            }
+            text.getChars(0, length, chars, 0);
+            return length;
+        }
 
-        panel.setBorder(BorderFactory.createEmptyBorder(8, 12, 8, 12));
-        panel.setOpaque(true);
-        primary.setOpaque(false);
-        secondary.setOpaque(false);
+        /** Cuts the buffer so it fits {@code available} with the ellipsis appended. */
+        private int ellipsize(FontMetrics fm, int length, int available) {
+            int room = available - fm.charsWidth(ELLIPSIS, 0, ELLIPSIS.length);
+            int kept = 0;
+            int width = 0;
+            while (kept < length && width + fm.charWidth(chars[kept]) <= room) {
+                width += fm.charWidth(chars[kept]);
+                kept++;
+            }
+            System.arraycopy(ELLIPSIS, 0, chars, kept, ELLIPSIS.length);
+            return kept + ELLIPSIS.length;
+        }
 
-        // Ensure consistent row height used by previous implementation
-        panel.setPreferredSize(new Dimension(panel.getPreferredSize().width, 32));
+        private FontMetrics metrics() {
+            if (metrics == null) {
+                metrics = getFontMetrics(LCD_FONT);
+            }
+            return metrics;
+        }
 
-        return panel;
+        @Override
+        public Dimension getPreferredSize() {
+            if (isPreferredSizeSet()) {
+                return super.getPreferredSize();
+            }
+            FontMetrics fm = metrics();
+            int width = 2 * PADDING + fm.stringWidth(primary);
+            if (!secondary.isEmpty()) {
+                width += GAP + fm.stringWidth(secondary);
+            }
+            return new Dimension(width, ROW_HEIGHT);
+        }
+
+        @Override
+        public boolean isOpaque() {
+            return true;
+        }
+
+        @Override
+        public void invalidate() {
+        }
+
+        @Override
+        public void validate() {
+        }
+
+        @Override
+        public void revalidate() {
+        }
+
+        @Override
+        public void repaint(long tm, int x, int y, int width, int height) {
+        }
+
+        @Override
+        public void repaint(Rectangle r) {
+        }
+
+        private static Object desktopHint(RenderingHints.Key key) {
+            Object hints = Toolkit.getDefaultToolkit().getDesktopProperty("awt.font.desktophints");
+            return hints instanceof java.util.Map ? ((java.util.Map<?, ?>) hints).get(key) : null;
+        }
     }
 
     /**
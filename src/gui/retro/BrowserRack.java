@@ -2,25 +2,39 @@ package gui.retro;
 
 import static gui.retro.RetroTheme.LCD_BACKGROUND;
 import static gui.retro.RetroTheme.LCD_BORDER;
+import static gui.retro.RetroTheme.LCD_FONT;
+import static gui.retro.RetroTheme.LCD_TEXT;
 
 import java.awt.BorderLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.FocusAdapter;
+import java.awt.event.FocusEvent;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.io.File;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
 import java.util.function.Consumer;
 
 import javax.swing.BorderFactory;
-import javax.swing.DefaultListModel;
 import javax.swing.JButton;
 import javax.swing.JScrollPane;
 import javax.swing.JList;
+import javax.swing.JTextField;
 import javax.swing.ListSelectionModel;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 
+import actions.LibraryListener;
 import application.ApplicationResources;
 import data.FileManager;
+import data.PlaylistData;
 import data.ProjectArtistData;
 import data.SongData;
 
@@ -29,13 +43,15 @@ import data.SongData;
  * Mirrors the old inline implementation from AudioStudio and provides
  * a simple selection callback so the parent can react to changes.
  */
-public class BrowserRack implements ActionListener {
+public class BrowserRack implements ActionListener, LibraryListener {
     private final ApplicationResources app;
     private final RetroRackPanel rackPanel;
 
-    private final DefaultListModel<SongData> songListModel;
+    private final SongListModel songListModel;
     private final JList<SongData> songList;
     private final JButton openButton;
+    private final JTextField searchField;
+    private BitSet searchHits; // songs matching the search field, null if it is empty
 
     private final Consumer<SongData> onSongSelected; // nullable
     private final Consumer<SongData> onSongDoubleClicked; // nullable
@@ -48,59 +64,52 @@ public class BrowserRack implements ActionListener {
 
         rackPanel = new RetroRackPanel(new BorderLayout(2, 2));
 
-        songListModel = new DefaultListModel<>();
-        refreshSongList();
+        searchField = new JTextField();
+        searchField.setBackground(LCD_BACKGROUND);
+        searchField.setForeground(LCD_TEXT);
+        searchField.setCaretColor(LCD_TEXT);
+        searchField.setFont(LCD_FONT.deriveFont(12f));
+        searchField.setBorder(BorderFactory.createCompoundBorder(BorderFactory.createLineBorder(LCD_BORDER, 1),
+                BorderFactory.createEmptyBorder(2, 4, 2, 4)));
+        searchField.setToolTipText("Search titles, artists, notes and paths");
+        searchField.addFocusListener(new FocusAdapter() {
+            @Override
+            public void focusGained(FocusEvent e) {
+                if (app.data != null)
+                    app.data.getSearchIndex().prepare();
+            }
+        });
+        searchField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                search();
+            }
 
-        songList = new JList<>(songListModel);
-        songList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
-        songList.setCellRenderer(new LCDListCellRenderer(
-                o -> {
-                    if (!(o instanceof SongData))
-                        return "";
-                    SongData song = (SongData) o;
-
-                    ArrayList<ProjectArtistData> projectArtists = song.getOwners();
-                    StringBuilder b = new StringBuilder();
-
-                    String displayText = "";
-
-                    if (projectArtists != null && !projectArtists.isEmpty()) {
-                        for (ProjectArtistData pa : projectArtists) {
-                            if (b.length() > 0)
-                                b.append(", ");
-                            b.append(pa.getName());
-                        }
-                        displayText += b.toString() + " - ";
-                    } else {
-                        if (song.getGuessedArtist() != null && !song.getGuessedArtist().isEmpty()) {
-                            displayText += song.getGuessedArtist() + " - ";
-                        } else {
-                            displayText += "Unknown Artist - ";
-                        }
-                    }
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                search();
+            }
 
-                    displayText += song.getTitle() != null ? song.getTitle() : "Unknown";
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                search();
+            }
+        });
+        rackPanel.add(searchField, BorderLayout.NORTH);
 
-                    if (displayText.equals("Unknown Artist - Unknown")) {
-                        String filePath = song.getFilePath();
-                        displayText = filePath != null ? new java.io.File(filePath).getName() : "Unknown";
-                    }
+        songListModel = new SongListModel();
+        songList = new JList<>(songListModel);
+        refreshSongList();
 
-                    return displayText;
-                },
-                o -> {
-                    if (!(o instanceof SongData))
-                        return "";
-                    long duration = ((SongData) o).getDurationSeconds();
-                    if (duration > 0) {
-                        long minutes = duration / 60;
-                        long seconds = duration % 60;
-                        return String.format("%02d:%02d", minutes, seconds);
-                    }
-                    return "";
-                }));
+        songList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        DurationLoader durations = new DurationLoader(songList);
+        SongLabels labels = new SongLabels(app.actionHandler, durations);
+        songList.setCellRenderer(new LCDListCellRenderer(labels::label, labels::duration));
         songList.setBackground(LCD_BACKGROUND);
         songList.setFixedCellHeight(32);
+        // rows are as wide as the list; without a fixed width every row is
+        // rendered to measure it whenever the list changes
+        songList.setFixedCellWidth(1);
 
         songList.addListSelectionListener(e -> {
             if (!e.getValueIsAdjusting()) {
@@ -134,6 +143,8 @@ public class BrowserRack implements ActionListener {
         scrollPane.setBorder(BorderFactory.createLineBorder(LCD_BORDER, 1));
         rackPanel.add(scrollPane, BorderLayout.CENTER);
 
+        app.actionHandler.addLibraryListener(this);
+
         openButton = new JButton("Open");
         openButton.addActionListener(this);
         rackPanel.add(openButton, BorderLayout.SOUTH);
@@ -147,14 +158,113 @@ public class BrowserRack implements ActionListener {
         return songList;
     }
 
+    /**
+     * Shows the songs of the selected playlist or project/artist, or all songs,
+     * that match the search. Only the rows that differ from the current list
+     * are removed and inserted, so the selection and scroll position stay.
+     */
     public void refreshSongList() {
-        songListModel.clear();
-        java.util.List<SongData> songs = (app.data != null) ? app.data.getSongsSorted() : null;
-        if (songs != null) {
-            for (SongData s : songs) {
-                songListModel.addElement(s);
+        if (app.data == null) {
+            songListModel.setSongs(Collections.emptyList());
+            return;
+        }
+        Object group = app.data.sortedByObject;
+        Collection<SongData> songs = (group instanceof PlaylistData || group instanceof ProjectArtistData)
+                ? app.data.getSongsOf(group)
+                : app.data.getSongsView();
+        if (searchHits != null) {
+            ArrayList<SongData> hits = new ArrayList<>();
+            for (SongData song : songs) {
+                if (app.data.getSearchIndex().matches(searchHits, song))
+                    hits.add(song);
             }
+            songs = hits;
         }
+
+        SongData selected = songList.getSelectedValue();
+        songListModel.setSongs(songs);
+        if (selected != null && songList.getSelectedValue() != selected) {
+            // a large change is sent as one contents change, which keeps row indices
+            int index = songListModel.indexOf(selected);
+            if (index >= 0)
+                songList.setSelectedIndex(index);
+            else
+                songList.clearSelection();
+        }
+    }
+
+    /** Filters the list by the text in the search field. */
+    private void search() {
+        if (app.data == null)
+            return;
+        searchHits = app.data.getSearchIndex().search(searchField.getText());
+        refreshSongList();
+    }
+
+    /**
+     * Returns the song listed directly after {@code song}, or null if it is the
+     * last one or not listed.
+     */
+    public SongData getSongAfter(SongData song) {
+        int index = songListModel.indexOf(song);
+        if (index < 0 || index + 1 >= songListModel.getSize())
+            return null;
+        return songListModel.getElementAt(index + 1);
+    }
+
+    /* ------------- incremental updates (LibraryListener) ------------- */
+
+    /** @return the songs of the shown playlist/project, null if all songs are shown */
+    private Set<SongData> shownMembers() {
+        Object group = app.data.sortedByObject;
+        if (group == null)
+            return null;
+        Set<SongData> members = Collections.newSetFromMap(new IdentityHashMap<>());
+        members.addAll(app.data.getSongsOf(group));
+        return members;
+    }
+
+    @Override
+    public void songsAdded(List<SongData> songs) {
+        // only songs of the shown playlist/project belong in the list
+        Set<SongData> members = shownMembers();
+        if (searchHits != null) {
+            // the search ran before these songs were indexed
+            searchHits = app.data.getSearchIndex().search(searchField.getText());
+        }
+        ArrayList<SongData> shown = new ArrayList<>();
+        for (SongData song : songs) {
+            if ((members == null || members.contains(song)) && app.data.getSearchIndex().matches(searchHits, song))
+                shown.add(song);
+        }
+        songListModel.add(shown);
+    }
+
+    @Override
+    public void songsRemoved(List<SongData> songs) {
+        songListModel.remove(songs);
+    }
+
+    @Override
+    public void songsChanged(List<SongData> songs) {
+        // a change can take songs into or out of the shown playlist/project or search
+        Set<SongData> members = shownMembers();
+        if (searchHits != null)
+            searchHits = app.data.getSearchIndex().search(searchField.getText());
+        ArrayList<SongData> entering = new ArrayList<>();
+        ArrayList<SongData> leaving = new ArrayList<>();
+        for (SongData song : songs) {
+            boolean shown = (members == null || members.contains(song))
+                    && app.data.getSearchIndex().matches(searchHits, song);
+            boolean listed = songListModel.indexOf(song) >= 0;
+            if (shown && !listed)
+                entering.add(song);
+            else if (!shown && listed)
+                leaving.add(song);
+        }
+        songListModel.remove(leaving);
+        songListModel.add(entering);
+        songListModel.changed(songs);
     }
 
     public void setSelectedSong(SongData song) {
@@ -166,15 +276,14 @@ public class BrowserRack implements ActionListener {
     public void actionPerformed(ActionEvent e) {
         if (e.getSource() == openButton) {
             ArrayList<File> files = app.fileManager.openFileDialog(FileManager.FileFilter.AUDIOFILE);
-            if (files != null) {
-                for (File file : files) {
-                    SongData song = app.actionHandler.addSong(file);
-                    if (song != null) {
-                        refreshSongList();
-                        songList.setSelectedValue(song, true);
-                        if (onSongSelected != null)
-                            onSongSelected.accept(song);
-                    }
+            if (files != null && !files.isEmpty()) {
+                // one action, one journal append and one list update for the whole import
+                List<SongData> added = app.actionHandler.addSongs(files);
+                if (!added.isEmpty()) {
+                    SongData song = added.get(added.size() - 1);
+                    songList.setSelectedValue(song, true);
+                    if (onSongSelected != null)
+                        onSongSelected.accept(song);
                 }
             }
         }
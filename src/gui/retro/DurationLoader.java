@@ -0,0 +1,129 @@
+package gui.retro;
+
+import java.awt.Rectangle;
+import java.io.File;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.JList;
+import javax.swing.ListModel;
+import javax.swing.SwingUtilities;
+
+import data.FileManager;
+import data.SongData;
+
+/**
+ * Supplies the duration column of a song list without blocking the EDT.
+ *
+ * Songs whose duration is not known yet show {@link #PLACEHOLDER} and are
+ * probed on a small background pool. The most recently requested songs are
+ * probed first, and only a bounded number of requests is kept, so rows that
+ * were scrolled past quickly do not hold up the rows on screen. When a probe
+ * finishes only that song's row is repainted.
+ */
+public class DurationLoader {
+    public static final String PLACEHOLDER = "--:--";
+    private static final int MAX_QUEUED = 64;
+
+    private static final ThreadPoolExecutor POOL = new ThreadPoolExecutor(2, 2, 30, TimeUnit.SECONDS,
+            new LinkedBlockingDeque<Runnable>() {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                public boolean offer(Runnable r) {
+                    // newest request first; forget the oldest ones beyond the limit
+                    while (size() >= MAX_QUEUED) {
+                        Runnable dropped = pollLast();
+                        if (dropped instanceof Probe) {
+                            ((Probe) dropped).drop();
+                        }
+                    }
+                    return offerFirst(r);
+                }
+            },
+            r -> {
+                Thread t = new Thread(r, "DurationProbe");
+                t.setDaemon(true);
+                t.setPriority(Thread.MIN_PRIORITY);
+                return t;
+            });
+
+    static {
+        POOL.allowCoreThreadTimeOut(true);
+    }
+
+    private final JList<?> list;
+    private final Set<SongData> pending = ConcurrentHashMap.newKeySet();
+
+    public DurationLoader(JList<?> list) {
+        this.list = list;
+    }
+
+    /**
+     * Returns the formatted duration of {@code value} if it is known, otherwise
+     * the placeholder, and starts probing it. Called from the cell renderer.
+     */
+    public String durationText(Object value) {
+        if (!(value instanceof SongData))
+            return "";
+        SongData song = (SongData) value;
+        long duration = song.getKnownDurationSeconds();
+        if (duration < 0) {
+            if (song.getFilePath() == null) {
+                return "";
+            }
+            if (pending.add(song)) {
+                POOL.execute(new Probe(song));
+            }
+            return PLACEHOLDER;
+        }
+        if (duration > 0) {
+            long minutes = duration / 60;
+            long seconds = duration % 60;
+            return String.format("%02d:%02d", minutes, seconds);
+        }
+        return "";
+    }
+
+    private void finished(SongData song, long duration) {
+        song.setDurationSeconds(duration);
+        pending.remove(song);
+
+        // only rows on screen need a repaint; the others render the new value when shown
+        int first = list.getFirstVisibleIndex();
+        int last = list.getLastVisibleIndex();
+        if (first < 0) {
+            return;
+        }
+        ListModel<?> model = list.getModel();
+        for (int i = first; i <= last && i < model.getSize(); i++) {
+            if (model.getElementAt(i) == song) {
+                Rectangle bounds = list.getCellBounds(i, i);
+                if (bounds != null) {
+                    list.repaint(bounds);
+                }
+            }
+        }
+    }
+
+    private class Probe implements Runnable {
+        private final SongData song;
+
+        Probe(SongData song) {
+            this.song = song;
+        }
+
+        void drop() {
+            pending.remove(song);
+        }
+
+        @Override
+        public void run() {
+            long duration = FileManager.getSongDurationSeconds(new File(song.getFilePath()));
+            SwingUtilities.invokeLater(() -> finished(song, duration));
+        }
+    }
+}
@@ -9,10 +9,14 @@ import java.awt.Dimension;
 import java.awt.FlowLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
 
 import javax.swing.BorderFactory;
 import javax.swing.DefaultListModel;
 import javax.swing.JComboBox;
+import javax.swing.JLabel;
 import javax.swing.JList;
 import javax.swing.JMenuItem;
 import javax.swing.JOptionPane;
@@ -20,9 +24,12 @@ import javax.swing.JPanel;
 import javax.swing.JPopupMenu;
 import javax.swing.JScrollPane;
 import javax.swing.JTabbedPane;
+import javax.swing.JTextArea;
 import javax.swing.ListSelectionModel;
+import javax.swing.SwingUtilities;
 
 import application.ApplicationResources;
+import data.AssignmentRule;
 import data.PlaylistData;
 import data.ProjectArtistData;
 
@@ -48,6 +55,7 @@ public class GroupRack implements ActionListener {
     private javax.swing.JPanel tabActionPanel;
     private RetroActionButton actionMenuButton;
     private JPopupMenu actionPopupMenu;
+    private boolean scanning = false; // a folder scan is running; EDT only
 
     public GroupRack(ApplicationResources app, Component parentComponent, Runnable onFilterChange) {
         this.app = app;
@@ -212,6 +220,42 @@ public class GroupRack implements ActionListener {
         }
     }
 
+    /**
+     * Lets the user edit the rules of "Sort songs to artists", one per line:
+     * {@code folder <path> => <name>} or {@code regex <pattern> => <name>}.
+     */
+    private void editAssignmentRules() {
+        StringBuilder text = new StringBuilder();
+        if (app.data.getAssignmentRules() != null) {
+            for (AssignmentRule rule : app.data.getAssignmentRules()) {
+                text.append(rule).append('\n');
+            }
+        }
+        JTextArea area = new JTextArea(text.toString(), 10, 50);
+        JPanel panel = new JPanel(new BorderLayout(0, 6));
+        panel.add(new JLabel("<html>One rule per line, tried in order before the guessed artist:<br>"
+                + "folder /path/to/bounces/Artist =&gt; Artist<br>"
+                + "regex /bounces/([^/]+)/ =&gt; $1</html>"), BorderLayout.NORTH);
+        panel.add(new JScrollPane(area), BorderLayout.CENTER);
+        while (JOptionPane.showConfirmDialog(parentComponent, panel, "Sort Rules", JOptionPane.OK_CANCEL_OPTION,
+                JOptionPane.PLAIN_MESSAGE) == JOptionPane.OK_OPTION) {
+            List<AssignmentRule> rules = new ArrayList<>();
+            try {
+                for (String line : area.getText().split("\n")) {
+                    if (!line.isBlank()) {
+                        rules.add(AssignmentRule.parse(line));
+                    }
+                }
+            } catch (IllegalArgumentException e) {
+                JOptionPane.showMessageDialog(parentComponent, e.getMessage(), "Invalid Rule",
+                        JOptionPane.ERROR_MESSAGE);
+                continue;
+            }
+            app.actionHandler.setAssignmentRules(rules);
+            return;
+        }
+    }
+
     private void editSelectedGroup() {
         int idx = groupTabs.getSelectedIndex();
         if (idx == 0) { // playlist rename
@@ -274,6 +318,48 @@ public class GroupRack implements ActionListener {
         notifyFilterChanged();
     }
 
+    private void trackFolder() {
+        File folder = app.fileManager.openFolderDialog();
+        if (folder != null) {
+            app.actionHandler.trackFolder(folder.getAbsolutePath());
+            rescanFolders();
+        }
+    }
+
+    /**
+     * Scans the tracked folders on a background thread and starts watching
+     * them. New audio files are imported and songs whose files are gone are
+     * removed, together as a single undoable action; an unchanged library
+     * records nothing.
+     */
+    public void rescanFolders() {
+        if (scanning || app.data.getTrackedFolders() == null || app.data.getTrackedFolders().isEmpty())
+            return;
+        scanning = true;
+        List<String> folders = new ArrayList<>(app.data.getTrackedFolders());
+        Thread scan = new Thread(() -> {
+            List<File> scanned = null;
+            try {
+                scanned = app.fileManager.getFolderScanner().scan(folders);
+                // keep the scanned directories under watch for live updates
+                app.fileManager.getFolderWatcher().watch(folders,
+                        app.fileManager.getFolderScanner().getDirectoriesBelow(null));
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+            List<File> files = scanned;
+            SwingUtilities.invokeLater(() -> {
+                scanning = false;
+                if (files == null)
+                    return;
+                // the songs rack picks the changes up through its LibraryListener
+                app.actionHandler.applyFolderScan(folders, files);
+            });
+        }, "FolderScan");
+        scan.setDaemon(true);
+        scan.start();
+    }
+
     private void showActionMenu(java.awt.Component invoker) {
         actionPopupMenu.removeAll();
         int idx = groupTabs.getSelectedIndex();
@@ -296,6 +382,10 @@ public class GroupRack implements ActionListener {
                         "Sort Complete", JOptionPane.INFORMATION_MESSAGE);
             });
             actionPopupMenu.add(miSort);
+
+            JMenuItem miRules = new JMenuItem("Sort Rules...");
+            miRules.addActionListener(ae -> editAssignmentRules());
+            actionPopupMenu.add(miRules);
         }
 
         JMenuItem miEdit = new JMenuItem("Edit");
@@ -316,6 +406,27 @@ public class GroupRack implements ActionListener {
         miShowAll.addActionListener(ae -> clearGroupFilter());
         actionPopupMenu.add(miShowAll);
 
+        JMenuItem miVersions = new JMenuItem("Group Versions");
+        miVersions.addActionListener(ae -> {
+            int grouped = app.actionHandler.groupVersions();
+            notifyFilterChanged();
+            JOptionPane.showMessageDialog(parentComponent, grouped + " songs were grouped with their other versions.",
+                    "Group Versions", JOptionPane.INFORMATION_MESSAGE);
+        });
+        actionPopupMenu.add(miVersions);
+
+        actionPopupMenu.addSeparator();
+
+        JMenuItem miTrack = new JMenuItem("Track Folder...");
+        miTrack.addActionListener(ae -> trackFolder());
+        actionPopupMenu.add(miTrack);
+
+        JMenuItem miRescan = new JMenuItem(scanning ? "Scanning..." : "Rescan Folders");
+        miRescan.addActionListener(ae -> rescanFolders());
+        miRescan.setEnabled(!scanning && app.data.getTrackedFolders() != null
+                && !app.data.getTrackedFolders().isEmpty());
+        actionPopupMenu.add(miRescan);
+
         actionPopupMenu.show(invoker, 0, invoker.getHeight());
     }
 
@@ -9,6 +9,8 @@ import static gui.retro.RetroTheme.*;
  * styled to resemble an old CD player LCD display.
  */
 public class LCDParentPanel extends JPanel {
+    private static final BackgroundCache.Layer BACKGROUND = LCDParentPanel::paintBackground;
+
     private final SongLCDPanel songPanel;
     private final RetroTimeline timelinePanel;
 
@@ -44,12 +46,10 @@ public class LCDParentPanel extends JPanel {
     @Override
     protected void paintComponent(Graphics g) {
         super.paintComponent(g);
-        Graphics2D g2d = (Graphics2D) g.create();
-        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-
-        int width = getWidth();
-        int height = getHeight();
+        BackgroundCache.draw((Graphics2D) g, BACKGROUND, false, 0, 0, getWidth(), getHeight());
+    }
 
+    private static void paintBackground(Graphics2D g2d, int width, int height) {
         // Draw LCD background with thick border for CD player look
         g2d.setColor(PANEL_DARK_SHADOW);
         g2d.fillRoundRect(0, 0, width, height, 18, 18);
@@ -59,11 +59,9 @@ public class LCDParentPanel extends JPanel {
         g2d.fillRoundRect(8, 8, width - 16, height - 16, 10, 10);
 
         // Draw scanline effect
-        g2d.setColor(new Color(0, 20, 0, 30));
+        g2d.setColor(LCD_SCANLINE);
         for (int i = 10; i < height - 10; i += 2) {
             g2d.drawLine(10, i, width - 11, i);
         }
-
-        g2d.dispose();
     }
 }
@@ -4,6 +4,10 @@ import javax.swing.*;
 import java.awt.*;
 import static gui.retro.RetroTheme.*;
 
+/**
+ * Embossed rack panel with a screw in each corner. The face is a layer of the
+ * {@link BackgroundCache}, painted once per panel size.
+ */
 public class RetroRackPanel extends JPanel {
 
     // Reduced thickness/margins to make panels more compact
@@ -11,6 +15,7 @@ public class RetroRackPanel extends JPanel {
     private static final int SCREW_SIZE = 14;
     private static final int SCREW_MARGIN = 6;
     private static final int CONTENT_PADDING = SCREW_MARGIN + SCREW_SIZE + 2; // smaller padding to save space
+    private static final BackgroundCache.Layer FACE = RetroRackPanel::paintFace;
 
     public RetroRackPanel() {
         setOpaque(false);
@@ -33,12 +38,11 @@ public class RetroRackPanel extends JPanel {
 
     @Override
     protected void paintComponent(Graphics g) {
-        Graphics2D g2d = (Graphics2D) g.create();
-        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-
-        int width = getWidth();
-        int height = getHeight();
+        BackgroundCache.draw((Graphics2D) g, FACE, true, 0, 0, getWidth(), getHeight());
+        super.paintComponent(g);
+    }
 
+    private static void paintFace(Graphics2D g2d, int width, int height) {
         // Draw the embossed panel background
         drawEmbossedBackground(g2d, width, height);
 
@@ -47,13 +51,9 @@ public class RetroRackPanel extends JPanel {
         drawScrew(g2d, width - SCREW_MARGIN - SCREW_SIZE, SCREW_MARGIN); // Top-right
         drawScrew(g2d, SCREW_MARGIN, height - SCREW_MARGIN - SCREW_SIZE); // Bottom-left
         drawScrew(g2d, width - SCREW_MARGIN - SCREW_SIZE, height - SCREW_MARGIN - SCREW_SIZE); // Bottom-right
-
-        g2d.dispose();
-
-        super.paintComponent(g);
     }
 
-    private void drawEmbossedBackground(Graphics2D g2d, int width, int height) {
+    private static void drawEmbossedBackground(Graphics2D g2d, int width, int height) {
         // Fill main background
         g2d.setColor(PANEL_FACE);
         g2d.fillRect(0, 0, width, height);
@@ -94,13 +94,13 @@ public class RetroRackPanel extends JPanel {
         g2d.drawLine(width - inset - 1, inset, width - inset - 1, height - inset - 1);
 
         // Subtle texture/grain effect
-        g2d.setColor(new Color(180, 180, 180, 30));
+        g2d.setColor(PANEL_GRAIN);
         for (int y = 0; y < height; y += 2) {
             g2d.drawLine(0, y, width, y);
         }
     }
 
-    private void drawScrew(Graphics2D g2d, int x, int y) {
+    private static void drawScrew(Graphics2D g2d, int x, int y) {
         // Outer shadow ring
         g2d.setColor(PANEL_DARK_SHADOW);
         g2d.fillOval(x + 1, y + 1, SCREW_SIZE, SCREW_SIZE);
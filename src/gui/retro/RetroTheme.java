@@ -27,6 +27,7 @@ public class RetroTheme {
     public static final Color PANEL_SHADOW = MAIN_COLOR.darker();
     public static final Color PANEL_DARK_SHADOW = MAIN_COLOR.darker().darker();
     public static final Color PANEL_INNER_HIGHLIGHT = new Color(230, 230, 230);
+    public static final Color PANEL_GRAIN = new Color(180, 180, 180, 30);
 
     // ========== Screw Colors ==========
     public static final Color SCREW_OUTER = new Color(50, 50, 50);
@@ -56,6 +57,7 @@ public class RetroTheme {
     public static final Color LCD_TEXT = new Color(50, 255, 50);
     public static final Color LCD_TEXT_SELECTED = new Color(150, 255, 150);
     public static final Color LCD_BORDER = new Color(30, 60, 30);
+    public static final Color LCD_SCANLINE = new Color(0, 20, 0, 30);
 
     // ========== Fonts ==========
     public static final Font HEADER_FONT = new Font("SansSerif", Font.BOLD, 13);
@@ -8,6 +8,11 @@ import static gui.retro.RetroTheme.*;
 /**
  * A retro-styled timeline component with LCD display and LED-style progress
  * bar.
+ *
+ * The backgrounds are not drawn shape by shape: the time display, the bar
+ * frame with every segment off and a lit segment are layers of the
+ * {@link BackgroundCache}. A position update only repaints the segments that
+ * changed, and the time display only when the shown second changes.
  */
 public class RetroTimeline extends JPanel {
 
@@ -28,6 +33,22 @@ public class RetroTimeline extends JPanel {
     private static final Color LED_OFF = new Color(20, 50, 20);
     private static final Color LED_ON = new Color(80, 255, 80);
     private static final Color LED_ON_GLOW = new Color(120, 255, 120, 100);
+    private static final Color LED_ON_BOTTOM = new Color(50, 200, 50);
+    private static final Color LED_ON_HIGHLIGHT = new Color(180, 255, 180, 150);
+    private static final Color LED_OFF_BOTTOM = new Color(15, 35, 15);
+    private static final Color LED_OFF_HIGHLIGHT = new Color(30, 60, 30, 100);
+    private static final Color LED_BORDER = new Color(10, 30, 10);
+    private static final Color BAR_BACKGROUND = new Color(25, 25, 28);
+
+    // pre-rendered layers; a segment sprite has a 1px margin for the glow
+    private static final BackgroundCache.Layer DISPLAY_BACKGROUND = RetroTimeline::paintDisplayBackground;
+    private static final BackgroundCache.Layer BAR_FRAME = RetroTimeline::paintBarFrame;
+    private static final BackgroundCache.Layer LIT_SEGMENT = (g, w, h) -> paintSegment(g, true);
+
+    private final Rectangle clip = new Rectangle();
+    private String timeText; // of the shown seconds
+    private long timeTextSeconds = -1;
+    private long timeTextTotalSeconds = -1;
 
     public interface TimelineListener {
         void onSeek(long timeMs);
@@ -45,12 +66,16 @@ public class RetroTimeline extends JPanel {
     }
 
     public void setCurrentTime(long timeMs) {
+        long oldTimeMs = currentTimeMs;
         this.currentTimeMs = Math.max(0, Math.min(timeMs, totalTimeMs));
-        repaint();
+        repaintPosition(oldTimeMs);
     }
 
     public void setTotalTime(long timeMs) {
-        this.totalTimeMs = Math.max(0, timeMs);
+        long total = Math.max(0, timeMs);
+        if (total == totalTimeMs)
+            return; // set on every timer tick
+        this.totalTimeMs = total;
         repaint();
     }
 
@@ -121,9 +146,42 @@ public class RetroTimeline extends JPanel {
         if (barWidth > 0 && totalTimeMs > 0) {
             double ratio = (double) (mouseX - barStartX) / barWidth;
             ratio = Math.max(0, Math.min(1, ratio));
+            long oldTimeMs = currentTimeMs;
             currentTimeMs = (long) (ratio * totalTimeMs);
-            repaint();
+            repaintPosition(oldTimeMs);
+        }
+    }
+
+    /**
+     * Repaints what moving from {@code oldTimeMs} to the current time changed:
+     * the time display if the shown second differs, and the segments between
+     * the old and the new end of the lit part.
+     */
+    private void repaintPosition(long oldTimeMs) {
+        int centerY = getHeight() / 2;
+        if (oldTimeMs / 1000 != currentTimeMs / 1000) {
+            repaint(10, centerY - DISPLAY_HEIGHT / 2, DISPLAY_WIDTH, DISPLAY_HEIGHT);
         }
+        int barStartX = DISPLAY_WIDTH + 20;
+        int numSegments = segmentCount(getWidth() - 15 - barStartX);
+        int oldLit = litSegments(oldTimeMs, numSegments);
+        int lit = litSegments(currentTimeMs, numSegments);
+        if (oldLit != lit) {
+            int segmentStep = BAR_SEGMENT_WIDTH + BAR_SEGMENT_GAP;
+            int from = Math.min(oldLit, lit);
+            int to = Math.max(oldLit, lit);
+            repaint(barStartX + from * segmentStep - 1, centerY - BAR_HEIGHT / 2 - 1,
+                    (to - from) * segmentStep + 2, BAR_HEIGHT + 2);
+        }
+    }
+
+    private static int segmentCount(int barWidth) {
+        return Math.max(0, (barWidth - BAR_SEGMENT_GAP) / (BAR_SEGMENT_WIDTH + BAR_SEGMENT_GAP));
+    }
+
+    private int litSegments(long timeMs, int numSegments) {
+        double ratio = totalTimeMs > 0 ? (double) timeMs / totalTimeMs : 0;
+        return (int) (numSegments * ratio);
     }
 
     @Override
@@ -135,9 +193,13 @@ public class RetroTimeline extends JPanel {
         int width = getWidth();
         int height = getHeight();
         int centerY = height / 2;
+        clip.setBounds(0, 0, width, height);
+        g2d.getClipBounds(clip);
 
-        // Draw time display panel (left)
-        drawTimeDisplay(g2d, 10, centerY - DISPLAY_HEIGHT / 2, DISPLAY_WIDTH, DISPLAY_HEIGHT);
+        // Draw time display panel (left), unless only the bar is repainted
+        if (clip.intersects(10, centerY - DISPLAY_HEIGHT / 2, DISPLAY_WIDTH, DISPLAY_HEIGHT)) {
+            drawTimeDisplay(g2d, 10, centerY - DISPLAY_HEIGHT / 2, DISPLAY_WIDTH, DISPLAY_HEIGHT);
+        }
 
         // Draw LED progress bar
         int barStartX = DISPLAY_WIDTH + 20;
@@ -149,23 +211,15 @@ public class RetroTimeline extends JPanel {
     }
 
     private void drawTimeDisplay(Graphics2D g2d, int x, int y, int width, int height) {
-        // Draw LCD background with beveled border (inset effect)
-        g2d.setColor(PANEL_DARK_SHADOW);
-        g2d.fillRect(x, y, width, height);
-        g2d.setColor(PANEL_SHADOW);
-        g2d.fillRect(x + 1, y + 1, width - 1, height - 1);
-        g2d.setColor(LCD_BACKGROUND);
-        g2d.fillRect(x + 2, y + 2, width - 3, height - 3);
+        BackgroundCache.draw(g2d, DISPLAY_BACKGROUND, true, x, y, width, height);
 
-        // Draw scanline effect
-        g2d.setColor(new Color(0, 20, 0, 30));
-        for (int i = y + 2; i < y + height - 2; i += 2) {
-            g2d.drawLine(x + 2, i, x + width - 3, i);
+        // Format time string: "00:00 / 00:00", once per shown second
+        if (timeText == null || currentTimeMs / 1000 != timeTextSeconds || totalTimeMs / 1000 != timeTextTotalSeconds) {
+            timeTextSeconds = currentTimeMs / 1000;
+            timeTextTotalSeconds = totalTimeMs / 1000;
+            timeText = formatTime(currentTimeMs) + " / " + formatTime(totalTimeMs);
         }
 
-        // Format time string: "00:00 / 00:00"
-        String timeText = formatTime(currentTimeMs) + " / " + formatTime(totalTimeMs);
-
         // Draw text
         g2d.setColor(LCD_TEXT);
         g2d.setFont(LCD_FONT);
@@ -175,60 +229,91 @@ public class RetroTimeline extends JPanel {
         g2d.drawString(timeText, textX, textY);
     }
 
-    private void drawLEDBar(Graphics2D g2d, int x, int y, int width, int height) {
-        // Draw bar background (inset)
+    /** LCD background with beveled border (inset effect) and scanlines. */
+    private static void paintDisplayBackground(Graphics2D g2d, int width, int height) {
         g2d.setColor(PANEL_DARK_SHADOW);
-        g2d.fillRoundRect(x - 4, y - 4, width + 8, height + 8, 6, 6);
+        g2d.fillRect(0, 0, width, height);
         g2d.setColor(PANEL_SHADOW);
-        g2d.fillRoundRect(x - 3, y - 3, width + 6, height + 6, 5, 5);
-        g2d.setColor(new Color(25, 25, 28));
-        g2d.fillRoundRect(x - 2, y - 2, width + 4, height + 4, 4, 4);
+        g2d.fillRect(1, 1, width - 1, height - 1);
+        g2d.setColor(LCD_BACKGROUND);
+        g2d.fillRect(2, 2, width - 3, height - 3);
+
+        g2d.setColor(LCD_SCANLINE);
+        for (int i = 2; i < height - 2; i += 2) {
+            g2d.drawLine(2, i, width - 3, i);
+        }
+    }
 
-        // Calculate number of segments
+    private void drawLEDBar(Graphics2D g2d, int x, int y, int width, int height) {
         int segmentStep = BAR_SEGMENT_WIDTH + BAR_SEGMENT_GAP;
-        int numSegments = (width - BAR_SEGMENT_GAP) / segmentStep;
+        int litSegments = litSegments(currentTimeMs, segmentCount(width));
+
+        BackgroundCache.draw(g2d, BAR_FRAME, false, x - 4, y - 4, width + 8, height + 8);
+
+        // only the lit segments that are inside the repainted area
+        int first = Math.max(0, (clip.x - x) / segmentStep);
+        int last = Math.min(litSegments - 1, (clip.x + clip.width - x) / segmentStep);
+        for (int i = first; i <= last; i++) {
+            BackgroundCache.draw(g2d, LIT_SEGMENT, true, x + i * segmentStep - 1, y - 1, BAR_SEGMENT_WIDTH + 2,
+                    height + 2);
+        }
+    }
 
-        // Calculate how many segments should be lit
-        double ratio = totalTimeMs > 0 ? (double) currentTimeMs / totalTimeMs : 0;
-        int litSegments = (int) (numSegments * ratio);
+    /** The bar background (inset) with every segment off, 4px around the bar. */
+    private static void paintBarFrame(Graphics2D g2d, int width, int height) {
+        g2d.setColor(PANEL_DARK_SHADOW);
+        g2d.fillRoundRect(0, 0, width, height, 6, 6);
+        g2d.setColor(PANEL_SHADOW);
+        g2d.fillRoundRect(1, 1, width - 2, height - 2, 5, 5);
+        g2d.setColor(BAR_BACKGROUND);
+        g2d.fillRoundRect(2, 2, width - 4, height - 4, 4, 4);
 
-        // Draw segments
+        int segmentStep = BAR_SEGMENT_WIDTH + BAR_SEGMENT_GAP;
+        int numSegments = segmentCount(width - 8);
         for (int i = 0; i < numSegments; i++) {
-            int segX = x + i * segmentStep;
-            boolean isLit = i < litSegments;
-
-            if (isLit) {
-                // Draw glow effect behind lit segment
-                g2d.setColor(LED_ON_GLOW);
-                g2d.fillRoundRect(segX - 1, y - 1, BAR_SEGMENT_WIDTH + 2, height + 2, 2, 2);
-
-                // Draw lit segment with gradient
-                GradientPaint ledGradient = new GradientPaint(
-                        segX, y, LED_ON,
-                        segX, y + height, new Color(50, 200, 50));
-                g2d.setPaint(ledGradient);
-                g2d.fillRoundRect(segX, y, BAR_SEGMENT_WIDTH, height, 2, 2);
-
-                // Highlight on top
-                g2d.setColor(new Color(180, 255, 180, 150));
-                g2d.fillRoundRect(segX + 1, y + 1, BAR_SEGMENT_WIDTH - 2, 3, 1, 1);
-            } else {
-                // Draw off segment
-                GradientPaint offGradient = new GradientPaint(
-                        segX, y, LED_OFF,
-                        segX, y + height, new Color(15, 35, 15));
-                g2d.setPaint(offGradient);
-                g2d.fillRoundRect(segX, y, BAR_SEGMENT_WIDTH, height, 2, 2);
-
-                // Subtle highlight
-                g2d.setColor(new Color(30, 60, 30, 100));
-                g2d.fillRoundRect(segX + 1, y + 1, BAR_SEGMENT_WIDTH - 2, 2, 1, 1);
-            }
+            Graphics2D segment = (Graphics2D) g2d.create(4 + i * segmentStep - 1, 3, BAR_SEGMENT_WIDTH + 2,
+                    height - 6);
+            paintSegment(segment, false);
+            segment.dispose();
+        }
+    }
 
-            // Draw segment border
-            g2d.setColor(new Color(10, 30, 10));
-            g2d.drawRoundRect(segX, y, BAR_SEGMENT_WIDTH - 1, height - 1, 2, 2);
+    /**
+     * One segment on the bar background, with a 1px margin so a lit sprite
+     * covers its glow and paints over an off segment.
+     */
+    private static void paintSegment(Graphics2D g2d, boolean isLit) {
+        int height = BAR_HEIGHT;
+        g2d.setColor(BAR_BACKGROUND);
+        g2d.fillRect(0, 0, BAR_SEGMENT_WIDTH + 2, height + 2);
+
+        int segX = 1;
+        int y = 1;
+        if (isLit) {
+            // Draw glow effect behind lit segment
+            g2d.setColor(LED_ON_GLOW);
+            g2d.fillRoundRect(segX - 1, y - 1, BAR_SEGMENT_WIDTH + 2, height + 2, 2, 2);
+
+            // Draw lit segment with gradient
+            g2d.setPaint(new GradientPaint(segX, y, LED_ON, segX, y + height, LED_ON_BOTTOM));
+            g2d.fillRoundRect(segX, y, BAR_SEGMENT_WIDTH, height, 2, 2);
+
+            // Highlight on top
+            g2d.setColor(LED_ON_HIGHLIGHT);
+            g2d.fillRoundRect(segX + 1, y + 1, BAR_SEGMENT_WIDTH - 2, 3, 1, 1);
+        } else {
+            // Draw off segment
+            g2d.setPaint(new GradientPaint(segX, y, LED_OFF, segX, y + height, LED_OFF_BOTTOM));
+            g2d.fillRoundRect(segX, y, BAR_SEGMENT_WIDTH, height, 2, 2);
+
+            // Subtle highlight
+            g2d.setColor(LED_OFF_HIGHLIGHT);
+            g2d.fillRoundRect(segX + 1, y + 1, BAR_SEGMENT_WIDTH - 2, 2, 1, 1);
         }
+
+        // Draw segment border
+        g2d.setColor(LED_BORDER);
+        g2d.drawRoundRect(segX, y, BAR_SEGMENT_WIDTH - 1, height - 1, 2, 2);
     }
 
     private String formatTime(long timeMs) {
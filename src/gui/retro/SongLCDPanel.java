@@ -2,13 +2,13 @@ package gui.retro;
 
 import static gui.retro.RetroTheme.LCD_BACKGROUND;
 import static gui.retro.RetroTheme.LCD_FONT;
+import static gui.retro.RetroTheme.LCD_SCANLINE;
 import static gui.retro.RetroTheme.LCD_TEXT;
 import static gui.retro.RetroTheme.LCD_TEXT_SELECTED;
 import static gui.retro.RetroTheme.PANEL_DARK_SHADOW;
 import static gui.retro.RetroTheme.PANEL_SHADOW;
 
 import java.awt.BorderLayout;
-import java.awt.Color;
 import java.awt.Container;
 import java.awt.Cursor;
 import java.awt.Dimension;
@@ -35,6 +35,8 @@ import data.SongData;
  * details.
  */
 public class SongLCDPanel extends JPanel {
+    private static final BackgroundCache.Layer BACKGROUND = SongLCDPanel::paintBackground;
+
     private SongData song;
     private boolean expanded = false;
     private JButton expandButton;
@@ -180,19 +182,7 @@ public class SongLCDPanel extends JPanel {
         int width = getWidth();
         int height = getHeight();
 
-        // Draw LCD background
-        g2d.setColor(PANEL_DARK_SHADOW);
-        g2d.fillRect(0, 0, width, height);
-        g2d.setColor(PANEL_SHADOW);
-        g2d.fillRect(1, 1, width - 2, height - 2);
-        g2d.setColor(LCD_BACKGROUND);
-        g2d.fillRect(2, 2, width - 4, height - 4);
-
-        // Draw scanline effect
-        g2d.setColor(new Color(0, 20, 0, 30));
-        for (int i = 2; i < height - 2; i += 2) {
-            g2d.drawLine(2, i, width - 3, i);
-        }
+        BackgroundCache.draw(g2d, BACKGROUND, true, 0, 0, width, height);
 
         // Draw main info
         int textX = 12;
@@ -271,6 +261,21 @@ public class SongLCDPanel extends JPanel {
         g2d.dispose();
     }
 
+    /** LCD background with scanline effect. */
+    private static void paintBackground(Graphics2D g2d, int width, int height) {
+        g2d.setColor(PANEL_DARK_SHADOW);
+        g2d.fillRect(0, 0, width, height);
+        g2d.setColor(PANEL_SHADOW);
+        g2d.fillRect(1, 1, width - 2, height - 2);
+        g2d.setColor(LCD_BACKGROUND);
+        g2d.fillRect(2, 2, width - 4, height - 4);
+
+        g2d.setColor(LCD_SCANLINE);
+        for (int i = 2; i < height - 2; i += 2) {
+            g2d.drawLine(2, i, width - 3, i);
+        }
+    }
+
     @Override
     public Dimension getPreferredSize() {
         if (expanded && song != null) {
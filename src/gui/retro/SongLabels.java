@@ -0,0 +1,122 @@
+package gui.retro;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import actions.ActionHandler;
+import actions.LibraryListener;
+import data.ProjectArtistData;
+import data.SongData;
+
+/**
+ * Display strings of the song rows: "owners - title" and the duration.
+ *
+ * Each string is worked out the first time a song's row is painted and kept
+ * until the {@link ActionHandler} reports the song changed or removed, so
+ * repainting a row only reads strings. The duration text is also redone
+ * when the known duration changes, as it does when a probe of the
+ * {@link DurationLoader} finishes.
+ */
+public class SongLabels implements LibraryListener {
+    private static class Entry {
+        final String label;
+        long seconds = -1; // duration the text was made for
+        String duration;
+
+        Entry(String label) {
+            this.label = label;
+        }
+    }
+
+    private final Map<SongData, Entry> entries = new IdentityHashMap<>();
+    private final DurationLoader durations;
+
+    public SongLabels(ActionHandler actionHandler, DurationLoader durations) {
+        this.durations = durations;
+        actionHandler.addLibraryListener(this);
+    }
+
+    /** Label provider for {@link LCDListCellRenderer}. */
+    public String label(Object value) {
+        if (!(value instanceof SongData))
+            return "";
+        return entry((SongData) value).label;
+    }
+
+    /** Secondary provider for {@link LCDListCellRenderer}. */
+    public String duration(Object value) {
+        if (!(value instanceof SongData))
+            return "";
+        SongData song = (SongData) value;
+        long seconds = song.getKnownDurationSeconds();
+        if (seconds < 0) {
+            // not known yet: the loader shows the placeholder and starts a probe
+            return durations.durationText(song);
+        }
+        Entry entry = entry(song);
+        if (entry.seconds != seconds || entry.duration == null) {
+            entry.duration = durations.durationText(song);
+            entry.seconds = seconds;
+        }
+        return entry.duration;
+    }
+
+    private Entry entry(SongData song) {
+        Entry entry = entries.get(song);
+        if (entry == null) {
+            entry = new Entry(buildLabel(song));
+            entries.put(song, entry);
+        }
+        return entry;
+    }
+
+    static String buildLabel(SongData song) {
+        ArrayList<ProjectArtistData> projectArtists = song.getOwners();
+        StringBuilder b = new StringBuilder();
+
+        if (projectArtists != null && !projectArtists.isEmpty()) {
+            for (ProjectArtistData pa : projectArtists) {
+                if (b.length() > 0)
+                    b.append(", ");
+                b.append(pa.getName());
+            }
+            b.append(" - ");
+        } else {
+            if (song.getGuessedArtist() != null && !song.getGuessedArtist().isEmpty()) {
+                b.append(song.getGuessedArtist()).append(" - ");
+            } else {
+                b.append("Unknown Artist - ");
+            }
+        }
+
+        b.append(song.getTitle() != null ? song.getTitle() : "Unknown");
+
+        String displayText = b.toString();
+        if (displayText.equals("Unknown Artist - Unknown")) {
+            String filePath = song.getFilePath();
+            displayText = filePath != null ? new File(filePath).getName() : "Unknown";
+        }
+        return displayText;
+    }
+
+    @Override
+    public void songsRemoved(List<SongData> songs) {
+        forget(songs);
+    }
+
+    @Override
+    public void songsChanged(List<SongData> songs) {
+        forget(songs);
+    }
+
+    private void forget(List<SongData> songs) {
+        if (entries.isEmpty())
+            return;
+        for (SongData song : songs) {
+            entries.remove(song);
+        }
+    }
+}
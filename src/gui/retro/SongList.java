@@ -5,14 +5,12 @@ import java.util.ArrayList;
 import java.util.function.Consumer;
 
 import javax.swing.BorderFactory;
-import javax.swing.DefaultListModel;
 import javax.swing.JList;
 import javax.swing.JScrollPane;
 import javax.swing.ListSelectionModel;
 import java.awt.event.MouseEvent;
 
 import application.ApplicationResources;
-import data.ProjectArtistData;
 import data.SongData;
 
 import static gui.retro.RetroTheme.LCD_BACKGROUND;
@@ -20,7 +18,7 @@ import static gui.retro.RetroTheme.LCD_BORDER;
 
 public class SongList {
 
-    private final DefaultListModel<SongData> songListModel;
+    private final SongListModel songListModel;
     private final JList<SongData> songList;
     private ApplicationResources app;
     public SongData selectedSong;
@@ -31,59 +29,19 @@ public class SongList {
     public SongList(ApplicationResources app) {
         this.app = app;
 
-        songListModel = new DefaultListModel<>();
+        songListModel = new SongListModel();
         refreshSongList();
 
         songList = new JList<>(songListModel);
         songList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
-        songList.setCellRenderer(new LCDListCellRenderer(
-                o -> {
-                    if (!(o instanceof SongData))
-                        return "";
-                    SongData song = (SongData) o;
-
-                    ArrayList<ProjectArtistData> projectArtists = song.getOwners();
-                    StringBuilder b = new StringBuilder();
-
-                    String displayText = "";
-
-                    if (projectArtists != null && !projectArtists.isEmpty()) {
-                        for (ProjectArtistData pa : projectArtists) {
-                            if (b.length() > 0)
-                                b.append(", ");
-                            b.append(pa.getName());
-                        }
-                        displayText += b.toString() + " - ";
-                    } else {
-                        if (song.getGuessedArtist() != null && !song.getGuessedArtist().isEmpty()) {
-                            displayText += song.getGuessedArtist() + " - ";
-                        } else {
-                            displayText += "Unknown Artist - ";
-                        }
-                    }
-
-                    displayText += song.getTitle() != null ? song.getTitle() : "Unknown";
-
-                    if (displayText.equals("Unknown Artist - Unknown")) {
-                        String filePath = song.getFilePath();
-                        displayText = filePath != null ? new java.io.File(filePath).getName() : "Unknown";
-                    }
-
-                    return displayText;
-                },
-                o -> {
-                    if (!(o instanceof SongData))
-                        return "";
-                    long duration = ((SongData) o).getDurationSeconds();
-                    if (duration > 0) {
-                        long minutes = duration / 60;
-                        long seconds = duration % 60;
-                        return String.format("%02d:%02d", minutes, seconds);
-                    }
-                    return "";
-                }));
+        DurationLoader durations = new DurationLoader(songList);
+        SongLabels labels = new SongLabels(app.actionHandler, durations);
+        songList.setCellRenderer(new LCDListCellRenderer(labels::label, labels::duration));
         songList.setBackground(LCD_BACKGROUND);
         songList.setFixedCellHeight(32);
+        // rows are as wide as the list; without a fixed width every row is
+        // rendered to measure it whenever the list changes
+        songList.setFixedCellWidth(1);
 
         songList.addListSelectionListener(e -> {
             if (!e.getValueIsAdjusting()) {
@@ -141,13 +99,7 @@ public class SongList {
     }
 
     public void refreshSongList() {
-        songListModel.clear();
-        java.util.List<SongData> songs = (app.data != null) ? app.data.getSongsSorted() : null;
-        if (songs != null) {
-            for (SongData s : songs) {
-                songListModel.addElement(s);
-            }
-        }
+        songListModel.setSongs(app.data != null ? app.data.getSongsSorted() : new ArrayList<>());
     }
 
 }
@@ -0,0 +1,197 @@
+package gui.retro;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import javax.swing.AbstractListModel;
+
+import data.SongData;
+
+/**
+ * List model of the song racks.
+ *
+ * {@link #setSongs} takes the songs to show, usually straight from the
+ * library or index views, and works out which ranges were removed and
+ * inserted instead of clearing and refilling the list. Unchanged rows keep
+ * their selection and scroll position, and a filter change fires a handful
+ * of range events rather than one per song. When a change breaks into more
+ * than {@link #MAX_RANGES} ranges it is sent as a single contents change.
+ */
+public class SongListModel extends AbstractListModel<SongData> {
+    private static final long serialVersionUID = 1L;
+
+    /** Above this many ranges, a change is sent as one contents change. */
+    static final int MAX_RANGES = 64;
+
+    private ArrayList<SongData> songs = new ArrayList<>();
+    private IdentityHashMap<SongData, Integer> positions; // built on demand, null after changes
+
+    @Override
+    public int getSize() {
+        return songs.size();
+    }
+
+    @Override
+    public SongData getElementAt(int index) {
+        return songs.get(index);
+    }
+
+    /** @return the row of {@code song}, or -1 if it is not listed */
+    public int indexOf(SongData song) {
+        if (positions == null) {
+            positions = new IdentityHashMap<>(songs.size());
+            for (int i = 0; i < songs.size(); i++) {
+                positions.put(songs.get(i), i);
+            }
+        }
+        Integer index = positions.get(song);
+        return index != null ? index : -1;
+    }
+
+    /**
+     * Shows {@code next} in its order. The collection is copied, so index
+     * views may be passed directly.
+     */
+    public void setSongs(Collection<SongData> next) {
+        ArrayList<SongData> target = new ArrayList<>(next);
+        int oldSize = songs.size();
+        int newSize = target.size();
+
+        // common head and tail
+        int start = 0;
+        int min = Math.min(oldSize, newSize);
+        while (start < min && songs.get(start) == target.get(start)) {
+            start++;
+        }
+        int oldEnd = oldSize;
+        int newEnd = newSize;
+        while (oldEnd > start && newEnd > start && songs.get(oldEnd - 1) == target.get(newEnd - 1)) {
+            oldEnd--;
+            newEnd--;
+        }
+        if (start == oldEnd && start == newEnd) {
+            return;
+        }
+
+        IdentityHashMap<SongData, Integer> wanted = new IdentityHashMap<>(newEnd - start);
+        for (int j = start; j < newEnd; j++) {
+            wanted.put(target.get(j), j);
+        }
+        // keep the old rows that are still wanted in the same relative order;
+        // the others are removed and, if wanted elsewhere, inserted again
+        boolean[] kept = new boolean[oldEnd - start];
+        Set<SongData> keptSongs = Collections.newSetFromMap(new IdentityHashMap<>());
+        int last = -1;
+        int ranges = 0;
+        for (int i = start; i < oldEnd && ranges <= MAX_RANGES; i++) {
+            Integer j = wanted.get(songs.get(i));
+            if (j != null && j > last) {
+                kept[i - start] = true;
+                keptSongs.add(songs.get(i));
+                last = j;
+            } else if (i == start || kept[i - start - 1]) {
+                ranges++;
+            }
+        }
+        for (int j = start; j < newEnd && ranges <= MAX_RANGES; j++) {
+            if (!keptSongs.contains(target.get(j)) && (j == start || keptSongs.contains(target.get(j - 1)))) {
+                ranges++;
+            }
+        }
+        if (ranges > MAX_RANGES) {
+            replace(target);
+            return;
+        }
+
+        // removals back to front, so the earlier rows keep their indices
+        int i = oldEnd - 1;
+        while (i >= start) {
+            if (kept[i - start]) {
+                i--;
+                continue;
+            }
+            int to = i;
+            while (i >= start && !kept[i - start]) {
+                i--;
+            }
+            songs.subList(i + 1, to + 1).clear();
+            positions = null;
+            fireIntervalRemoved(this, i + 1, to);
+        }
+        // insertions front to back; the rows before j already match the target
+        int j = start;
+        while (j < newEnd) {
+            if (keptSongs.contains(target.get(j))) {
+                j++;
+                continue;
+            }
+            int from = j;
+            while (j < newEnd && !keptSongs.contains(target.get(j))) {
+                j++;
+            }
+            songs.addAll(from, target.subList(from, j));
+            positions = null;
+            fireIntervalAdded(this, from, j - 1);
+        }
+    }
+
+    /** Appends {@code added} as one range. */
+    public void add(Collection<SongData> added) {
+        if (added.isEmpty()) {
+            return;
+        }
+        int from = songs.size();
+        songs.addAll(added);
+        positions = null;
+        fireIntervalAdded(this, from, songs.size() - 1);
+    }
+
+    /** Removes the listed ones of {@code removed}, one event per range. */
+    public void remove(Collection<SongData> removed) {
+        Set<SongData> gone = Collections.newSetFromMap(new IdentityHashMap<>());
+        gone.addAll(removed);
+        ArrayList<SongData> next = new ArrayList<>(songs.size());
+        for (SongData song : songs) {
+            if (!gone.contains(song)) {
+                next.add(song);
+            }
+        }
+        if (next.size() != songs.size()) {
+            setSongs(next);
+        }
+    }
+
+    /** Repaints the rows of {@code changed} that are listed. */
+    public void changed(Collection<SongData> changed) {
+        int from = Integer.MAX_VALUE;
+        int to = -1;
+        for (SongData song : changed) {
+            int index = indexOf(song);
+            if (index >= 0) {
+                from = Math.min(from, index);
+                to = Math.max(to, index);
+            }
+        }
+        if (to >= 0) {
+            fireContentsChanged(this, from, to);
+        }
+    }
+
+    private void replace(ArrayList<SongData> target) {
+        int oldSize = songs.size();
+        int newSize = target.size();
+        songs = target;
+        positions = null;
+        if (newSize < oldSize) {
+            fireIntervalRemoved(this, newSize, oldSize - 1);
+        } else if (newSize > oldSize) {
+            fireIntervalAdded(this, oldSize, newSize - 1);
+        }
+        if (Math.min(oldSize, newSize) > 0) {
+            fireContentsChanged(this, 0, Math.min(oldSize, newSize) - 1);
+        }
+    }
+}
@@ -14,7 +14,7 @@ public class TransportRack extends RetroRackPanel {
     private RetroTransportButton playButton;
     private RetroTransportButton pauseButton;
     private RetroTransportButton stopButton;
-    
+    private RetroActionButton compareButton;
 
     private RetroTimeline timeline;
     private SongLCDPanel songPanel;
@@ -40,11 +40,15 @@ public class TransportRack extends RetroRackPanel {
         stopButton = new RetroTransportButton(TransportType.STOP);
         stopButton.addActionListener(listener);
 
-
+        // cycles through the versions of the current song (A/B compare)
+        compareButton = new RetroActionButton("A/B");
+        compareButton.setToolTipText("Compare versions");
+        compareButton.addActionListener(listener);
 
         buttonsPanel.add(playButton);
         buttonsPanel.add(pauseButton);
         buttonsPanel.add(stopButton);
+        buttonsPanel.add(compareButton);
 
         // Create timeline
         timeline = new RetroTimeline();
@@ -67,6 +71,10 @@ public class TransportRack extends RetroRackPanel {
         return stopButton;
     }
 
+    public RetroActionButton getCompareButton() {
+        return compareButton;
+    }
+
     public RetroTimeline getTimeline() {
         return timeline;
     }